@@ -3,6 +3,9 @@ package com.example.pagedgridview;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.util.LruCache;
+import com.jakewharton.salvage.TrimLevels;
+
+import java.util.Map;
 
 /**
  * User: Andrew Matuk (Veon)
@@ -11,9 +14,46 @@ import android.util.LruCache;
  */
 public class BitmapLruCache<T> extends LruCache<T, Bitmap> {
     private static final float DEFAULT_MEM_CACHE_PERCENT = 0.25f;
+    private final BitmapPool mPool;
 
     public BitmapLruCache(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * @param pool Receives every bitmap the cache drops so its memory can be reused, or
+     *             {@code null}.
+     */
+    public BitmapLruCache(Context context, BitmapPool pool) {
         super(Utils.getMemCacheSize(context, DEFAULT_MEM_CACHE_PERCENT));
+        mPool = pool;
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, T key, Bitmap oldValue, Bitmap newValue) {
+        if (mPool != null && oldValue != newValue) {
+            mPool.evicted(oldValue);
+        }
+    }
+
+    /**
+     * Drop the least recently used bitmaps in proportion to the trim {@code level}. The maximum
+     * size is left alone so the cache refills when the app is in use again.
+     */
+    public void trimMemory(int level) {
+        float retained = TrimLevels.retainedFraction(level);
+        if (retained == 0f) {
+            evictAll();
+            return;
+        }
+        int target = (int) (size() * retained);
+        // The snapshot is ordered from least to most recently used.
+        for (Map.Entry<T, Bitmap> entry : snapshot().entrySet()) {
+            if (size() <= target) {
+                break;
+            }
+            remove(entry.getKey());
+        }
     }
 
     @Override
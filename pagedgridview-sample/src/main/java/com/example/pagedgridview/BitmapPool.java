@@ -0,0 +1,150 @@
+package com.example.pagedgridview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import com.jakewharton.salvage.TrimLevels;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Mutable bitmaps which are no longer used, bucketed by size and config, so decodes can reuse
+ * their memory through {@link android.graphics.BitmapFactory.Options#inBitmap} instead of
+ * allocating.
+ * <p>
+ * Bitmaps enter the pool when {@link BitmapLruCache} evicts them, but a bitmap is only reusable
+ * once no view displays it any more. Views report this through {@link #retain(Bitmap)} and
+ * {@link #release(Bitmap)}; an evicted bitmap which is still displayed waits until its last
+ * display is released. Every retain must be matched by a release, including for views which are
+ * dropped rather than reloaded, or the bitmap is held outside of every budget until
+ * {@link #releaseAll()}. The pool is bounded by a byte budget and drops its oldest bitmaps first.
+ * <p>
+ * All methods are thread safe.
+ */
+public class BitmapPool {
+    private static final float DEFAULT_POOL_PERCENT = 0.05f;
+
+    private final int mMaxSize;
+    private int mSize;
+    private final Map<Long, ArrayList<Bitmap>> mBuckets = new HashMap<Long, ArrayList<Bitmap>>();
+    /** Pooled bitmaps from oldest to newest. */
+    private final LinkedList<Bitmap> mOrder = new LinkedList<Bitmap>();
+    /** Number of views displaying each bitmap. */
+    private final Map<Bitmap, Integer> mDisplayCounts = new IdentityHashMap<Bitmap, Integer>();
+    /** Bitmaps evicted from the cache while they were still displayed. */
+    private final Map<Bitmap, Boolean> mEvicted = new IdentityHashMap<Bitmap, Boolean>();
+
+    public BitmapPool(Context context) {
+        this(Utils.getMemCacheSize(context, DEFAULT_POOL_PERCENT));
+    }
+
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return A pooled bitmap with exactly these dimensions and config, or {@code null}. The
+     *         caller owns it and its pixels are undefined.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayList<Bitmap> bucket = mBuckets.get(key(width, height, config));
+        if (bucket == null || bucket.isEmpty()) {
+            return null;
+        }
+        Bitmap bitmap = bucket.remove(bucket.size() - 1);
+        mOrder.remove(bitmap);
+        mSize -= Utils.getBitmapSize(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Offer a bitmap which is neither cached nor displayed anywhere for reuse.
+     *
+     * @return False if the bitmap can't be reused, in which case it still belongs to the caller.
+     */
+    public synchronized boolean put(Bitmap bitmap) {
+        int size = Utils.getBitmapSize(bitmap);
+        if (!bitmap.isMutable() || bitmap.isRecycled() || bitmap.getConfig() == null || size > mMaxSize) {
+            return false;
+        }
+        Long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayList<Bitmap> bucket = mBuckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<Bitmap>();
+            mBuckets.put(key, bucket);
+        }
+        bucket.add(bitmap);
+        mOrder.add(bitmap);
+        mSize += size;
+        trimToSize(mMaxSize);
+        return true;
+    }
+
+    /** Record that a view started displaying {@code bitmap}. */
+    public synchronized void retain(Bitmap bitmap) {
+        Integer count = mDisplayCounts.get(bitmap);
+        mDisplayCounts.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Record that a view stopped displaying {@code bitmap}. If it was evicted from the cache in the
+     * meantime and this was its last display it enters the pool.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        Integer count = mDisplayCounts.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            mDisplayCounts.put(bitmap, count - 1);
+            return;
+        }
+        mDisplayCounts.remove(bitmap);
+        if (mEvicted.remove(bitmap) != null) {
+            put(bitmap);
+        }
+    }
+
+    /**
+     * Forget every display, because the views showing the bitmaps are gone. Bitmaps which were
+     * evicted in the meantime enter the pool.
+     */
+    public synchronized void releaseAll() {
+        mDisplayCounts.clear();
+        for (Bitmap bitmap : mEvicted.keySet()) {
+            put(bitmap);
+        }
+        mEvicted.clear();
+    }
+
+    /** Called when the memory cache drops {@code bitmap}. */
+    public synchronized void evicted(Bitmap bitmap) {
+        if (mDisplayCounts.containsKey(bitmap)) {
+            mEvicted.put(bitmap, Boolean.TRUE);
+        } else {
+            put(bitmap);
+        }
+    }
+
+    /** Drop pooled bitmaps in proportion to the trim {@code level}. */
+    public synchronized void trimMemory(int level) {
+        trimToSize((int) (mSize * TrimLevels.retainedFraction(level)));
+    }
+
+    private void trimToSize(int maxSize) {
+        while (mSize > maxSize && !mOrder.isEmpty()) {
+            Bitmap bitmap = mOrder.removeFirst();
+            mBuckets.get(key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig())).remove(bitmap);
+            mSize -= Utils.getBitmapSize(bitmap);
+            // Nothing references it any more, so release the pixels right away.
+            bitmap.recycle();
+        }
+    }
+
+    private static Long key(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+    }
+}
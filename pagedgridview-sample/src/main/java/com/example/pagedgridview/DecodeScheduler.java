@@ -0,0 +1,304 @@
+package com.example.pagedgridview;
+
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs image decodes on a small pool of background threads sized from the number of cores.
+ * <p>
+ * Waiting tasks are ordered by how far their page is from the page on screen, so the current page
+ * is decoded first, then its neighbours. Among tasks for equally distant pages the most recently
+ * submitted one runs first, since after a fast swipe the newest requests are the ones the user is
+ * looking at. Tasks for a page which left the pager can be cancelled before they start.
+ * <p>
+ * Prefetch tasks, for pages the user is expected to reach, run after every other task for an
+ * equally distant page and can be cancelled as a group when the user turns around.
+ * <p>
+ * The scheduler is also the pause gate of the whole pipeline. While it is paused, for example
+ * during a swipe, workers finish the decode they are running but don't take another task off the
+ * queue until it is resumed, so the tasks held back can still be reordered and cancelled.
+ */
+public class DecodeScheduler {
+    private static final int MAX_THREADS = 4;
+
+    private final PausableQueue mQueue = new PausableQueue();
+    private final ThreadPoolExecutor mExecutor;
+    private long mSequence;
+    private int mCurrentPage;
+
+    public DecodeScheduler() {
+        // Leave a core for the UI thread.
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, MAX_THREADS));
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, mQueue, THREAD_FACTORY);
+        mExecutor.prestartAllCoreThreads();
+    }
+
+    /** Queue {@code task}. Must be called on the main thread. */
+    public void submit(Task task) {
+        task.mSequence = mSequence++;
+        task.mPriority = priorityOf(task.mPage);
+        mExecutor.execute(task);
+    }
+
+    /** Queue {@code task} as a prefetch. Must be called on the main thread. */
+    public void prefetch(Task task) {
+        task.mPrefetch = true;
+        submit(task);
+    }
+
+    /**
+     * Turn a prefetch {@code task} into a regular one, because a visible cell is now waiting for
+     * it. Must be called on the main thread.
+     */
+    public void promote(Task task) {
+        if (!task.mPrefetch) {
+            return;
+        }
+        boolean waiting = mQueue.remove(task);
+        task.mPrefetch = false;
+        if (waiting) {
+            mQueue.add(task);
+        }
+    }
+
+    /**
+     * Tell the scheduler which page is on screen so waiting tasks are reordered around it. Must be
+     * called on the main thread.
+     */
+    public void setCurrentPage(int page) {
+        if (page == mCurrentPage) {
+            return;
+        }
+        mCurrentPage = page;
+        List<Runnable> waiting = new ArrayList<Runnable>(mQueue.size());
+        mQueue.drainTo(waiting);
+        for (Runnable runnable : waiting) {
+            Task task = (Task) runnable;
+            task.mPriority = priorityOf(task.mPage);
+            mQueue.add(task);
+        }
+    }
+
+    /**
+     * Cancel every task for {@code page} which has not started yet. Tasks which are already running
+     * are left to finish so their result can still be cached.
+     *
+     * @return The number of cancelled tasks.
+     */
+    public int cancelPage(int page) {
+        int cancelled = 0;
+        for (Runnable runnable : mQueue) {
+            Task task = (Task) runnable;
+            if (task.mPage == page && mQueue.remove(task)) {
+                task.cancel();
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Cancel every prefetch task which has not started yet.
+     *
+     * @return The number of cancelled tasks.
+     */
+    public int cancelPrefetch() {
+        int cancelled = 0;
+        for (Runnable runnable : mQueue) {
+            Task task = (Task) runnable;
+            if (task.mPrefetch && mQueue.remove(task)) {
+                task.cancel();
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /** Hold back waiting tasks until {@link #setPaused(boolean) resumed}. */
+    public void setPaused(boolean paused) {
+        mQueue.setPaused(paused);
+    }
+
+    public boolean isPaused() {
+        return mQueue.isPaused();
+    }
+
+    /** Cancel all waiting tasks and stop the worker threads. */
+    public void shutdown() {
+        for (Runnable runnable : mExecutor.shutdownNow()) {
+            ((Task) runnable).cancel();
+        }
+    }
+
+    /**
+     * Wait for the tasks which were already running when the scheduler was {@link #shutdown() shut
+     * down} to finish.
+     *
+     * @return False if they were still running after {@code timeoutMillis} or the calling thread
+     *         was interrupted.
+     */
+    public boolean awaitTermination(long timeoutMillis) {
+        try {
+            return mExecutor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private int priorityOf(int page) {
+        return Math.abs(page - mCurrentPage);
+    }
+
+    /** A unit of background work belonging to a page. */
+    public abstract static class Task implements Runnable, Comparable<Task> {
+        final int mPage;
+        long mSequence;
+        /** Distance from the current page when the task was last queued. Lower runs first. */
+        int mPriority;
+        /** Whether no visible cell is waiting for the task yet. */
+        boolean mPrefetch;
+        private volatile boolean mCancelled;
+
+        protected Task(int page) {
+            mPage = page;
+        }
+
+        @Override
+        public final void run() {
+            // Cancelled while a worker was taking it off the queue.
+            if (!mCancelled) {
+                runTask();
+            }
+        }
+
+        /** Do the work on a background thread. */
+        protected abstract void runTask();
+
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            if (mPrefetch != other.mPrefetch) {
+                return mPrefetch ? 1 : -1;
+            }
+            // Newest first.
+            if (mSequence != other.mSequence) {
+                return mSequence > other.mSequence ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Blocks workers before they take a task while paused, so held back tasks stay in the queue. A
+     * worker which was interrupted while waiting, because the scheduler shuts down, takes nothing.
+     */
+    private static final class PausableQueue extends PriorityBlockingQueue<Runnable> {
+        private static final long serialVersionUID = 1L;
+
+        private final Object mLock = new Object();
+        private boolean mPaused;
+
+        void setPaused(boolean paused) {
+            synchronized (mLock) {
+                mPaused = paused;
+                if (!paused) {
+                    mLock.notifyAll();
+                }
+            }
+        }
+
+        boolean isPaused() {
+            synchronized (mLock) {
+                return mPaused;
+            }
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            while (true) {
+                awaitResume(0, false);
+                Runnable task = super.take();
+                if (keep(task)) {
+                    return task;
+                }
+            }
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (awaitResume(deadline, true)) {
+                Runnable task = super.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (task == null || keep(task)) {
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        /** @return False if {@code deadline} passed while paused. */
+        private boolean awaitResume(long deadline, boolean timed) throws InterruptedException {
+            synchronized (mLock) {
+                while (mPaused) {
+                    if (!timed) {
+                        mLock.wait();
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(mLock, remaining);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * @return True if the worker which just took {@code task} may run it, or false if the
+         *         scheduler was paused while the worker waited for it, in which case it is put back.
+         */
+        private boolean keep(Runnable task) {
+            synchronized (mLock) {
+                if (!mPaused) {
+                    return true;
+                }
+            }
+            super.offer(task);
+            return false;
+        }
+    }
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "Decode #" + mCount.incrementAndGet());
+        }
+    };
+}
@@ -0,0 +1,307 @@
+package com.example.pagedgridview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A persistent second level behind {@link BitmapLruCache} holding thumbnails which were already
+ * scaled down for the grid, so a cold start after the process was killed doesn't have to decode
+ * the original images again.
+ * <p>
+ * Each thumbnail is a compressed file in the cache directory. Entries are evicted least recently
+ * used first once their total size exceeds the byte budget. Their order and sizes are recorded in
+ * an append-only journal, one {@code PUT key size}, {@code READ key} or {@code DEL key} line per
+ * operation, which is replayed when the cache is opened and compacted when it has grown much
+ * larger than the entries it describes. Files are written under a temporary name and renamed into
+ * place, so a half-written thumbnail is never read back. Files the journal doesn't list, such as
+ * temporary files left by a crash, are deleted when the cache is opened.
+ * <p>
+ * {@link #get(String)} returns the entry's file so callers decode it in place rather than reading
+ * it into memory first. The cache is opened lazily on first use, which should be on a background
+ * thread. There must only be one instance per directory, since instances don't see each other's
+ * journal entries. All methods are thread safe.
+ */
+public class DiskThumbnailCache {
+    private static final String TAG = "DiskThumbnailCache";
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final String PUT = "PUT";
+    private static final String READ = "READ";
+    private static final String DEL = "DEL";
+    private static final int COMPACT_THRESHOLD = 2000;
+    private static final int JPEG_QUALITY = 85;
+    public static final long DEFAULT_MAX_SIZE = 20 * 1024 * 1024;
+
+    private final Context mContext;
+    private final long mMaxSize;
+    private File mDirectory;
+    private Writer mJournal;
+    private long mSize;
+    private boolean mClosed;
+    /** Entry sizes in access order, least recently used first. */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(0, 0.75f, true);
+    /** Journal lines which no longer describe a live entry. */
+    private int mRedundantOps;
+
+    public DiskThumbnailCache(Context context) {
+        this(context, DEFAULT_MAX_SIZE);
+    }
+
+    public DiskThumbnailCache(Context context, long maxSize) {
+        mContext = context.getApplicationContext();
+        mMaxSize = maxSize;
+    }
+
+    /** @return The file holding the thumbnail for {@code key}, or {@code null} if there is none. */
+    public synchronized File get(String key) {
+        if (!ensureOpen() || !mEntries.containsKey(key)) {
+            return null;
+        }
+        File file = entryFile(key);
+        if (!file.exists()) {
+            // Deleted behind our back, for example by the system clearing the cache directory.
+            remove(key);
+            return null;
+        }
+        append(READ, key, -1);
+        mRedundantOps++;
+        return file;
+    }
+
+    /** Store {@code bitmap} for {@code key}, replacing any existing entry. */
+    public synchronized void put(String key, Bitmap bitmap) {
+        if (!ensureOpen()) {
+            return;
+        }
+        File tmp = new File(mDirectory, key + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            Bitmap.CompressFormat format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+            if (!bitmap.compress(format, JPEG_QUALITY, out)) {
+                throw new IOException("Unable to compress " + key);
+            }
+            out.close();
+            out = null;
+            File file = entryFile(key);
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to rename " + tmp);
+            }
+            Long previous = mEntries.put(key, file.length());
+            if (previous != null) {
+                mSize -= previous;
+                mRedundantOps++;
+            }
+            mSize += file.length();
+            append(PUT, key, file.length());
+            mJournal.flush();
+            trimToSize();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to store " + key, e);
+            tmp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    public synchronized void remove(String key) {
+        if (!ensureOpen()) {
+            return;
+        }
+        Long size = mEntries.remove(key);
+        if (size != null) {
+            mSize -= size;
+            entryFile(key).delete();
+            append(DEL, key, -1);
+            mRedundantOps += 2;
+        }
+    }
+
+    /** Close the journal. The cache acts as if it were empty afterwards. */
+    public synchronized void close() {
+        mClosed = true;
+        if (mJournal == null) {
+            return;
+        }
+        try {
+            mJournal.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to close journal", e);
+        }
+        mJournal = null;
+    }
+
+    private void trimToSize() throws IOException {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            String key = entry.getKey();
+            mSize -= entry.getValue();
+            iterator.remove();
+            entryFile(key).delete();
+            append(DEL, key, -1);
+            mRedundantOps += 2;
+        }
+        if (mRedundantOps >= COMPACT_THRESHOLD && mRedundantOps >= mEntries.size()) {
+            rewriteJournal();
+        }
+    }
+
+    private File entryFile(String key) {
+        return new File(mDirectory, key);
+    }
+
+    /** @return False if the cache directory can't be used, in which case the cache stays empty. */
+    private boolean ensureOpen() {
+        if (mClosed) {
+            return false;
+        }
+        if (mJournal != null) {
+            return true;
+        }
+        if (mDirectory != null) {
+            return false; // Opening failed before.
+        }
+        mDirectory = new File(mContext.getCacheDir(), "thumbnails");
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + mDirectory);
+            return false;
+        }
+        try {
+            readJournal();
+            deleteUnlistedFiles();
+            mJournal = new BufferedWriter(new FileWriter(new File(mDirectory, JOURNAL), true));
+            trimToSize();
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to open journal, starting over", e);
+        }
+        // The journal is corrupt. Throw away everything it described.
+        mEntries.clear();
+        mSize = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        try {
+            mJournal = new BufferedWriter(new FileWriter(new File(mDirectory, JOURNAL), false));
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to create journal", e);
+            return false;
+        }
+    }
+
+    private void readJournal() throws IOException {
+        File journal = new File(mDirectory, JOURNAL);
+        if (!journal.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(journal));
+        try {
+            int lines = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                String[] parts = line.split(" ");
+                if (PUT.equals(parts[0]) && parts.length == 3) {
+                    Long previous = mEntries.put(parts[1], Long.parseLong(parts[2]));
+                    if (previous != null) {
+                        mSize -= previous;
+                    }
+                    mSize += Long.parseLong(parts[2]);
+                } else if (READ.equals(parts[0]) && parts.length == 2) {
+                    mEntries.get(parts[1]);
+                } else if (DEL.equals(parts[0]) && parts.length == 2) {
+                    Long size = mEntries.remove(parts[1]);
+                    if (size != null) {
+                        mSize -= size;
+                    }
+                } else {
+                    throw new IOException("Unexpected journal line: " + line);
+                }
+            }
+            mRedundantOps = lines - mEntries.size();
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt journal: " + e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Delete the files the journal doesn't describe: {@code .tmp} files left by a write which never
+     * finished, including an interrupted journal rewrite, and entries whose {@code PUT} line was
+     * lost in a crash. They would otherwise take up space outside the byte budget forever.
+     */
+    private void deleteUnlistedFiles() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!JOURNAL.equals(name) && !mEntries.containsKey(name)) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Replace the journal with one {@code PUT} line per live entry, in access order. */
+    private void rewriteJournal() throws IOException {
+        mJournal.close();
+        // Leaves the cache disabled if anything below fails.
+        mJournal = null;
+        File tmp = new File(mDirectory, JOURNAL_TMP);
+        Writer writer = new BufferedWriter(new FileWriter(tmp, false));
+        try {
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(PUT + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(new File(mDirectory, JOURNAL))) {
+            throw new IOException("Unable to rename " + tmp);
+        }
+        mJournal = new BufferedWriter(new FileWriter(new File(mDirectory, JOURNAL), true));
+        mRedundantOps = 0;
+    }
+
+    private void append(String op, String key, long size) {
+        try {
+            if (size < 0) {
+                mJournal.write(op + ' ' + key + '\n');
+            } else {
+                mJournal.write(op + ' ' + key + ' ' + size + '\n');
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write journal", e);
+        }
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
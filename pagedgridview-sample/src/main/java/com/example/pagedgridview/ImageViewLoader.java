@@ -1,148 +1,424 @@
 package com.example.pagedgridview;
 
+import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
-import android.util.LruCache;
 import android.widget.ImageView;
 
+import java.io.File;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * User: Andrew Matuk (Veon)
  * Date: 3/7/13
  * Time: 12:30 AM
  */
-public class ImageViewLoader<T> extends AsyncTask<Object, Object, Bitmap> {
+
+/**
+ * Loads the thumbnail of a single image on a {@link DecodeScheduler} thread. Every
+ * {@link ImageView} which asked for the image while the load was in flight is a target and
+ * receives the bitmap on the main thread, as long as it still shows this load's placeholder.
+ * <p>
+ * Images are decoded with the largest power of two sample size which keeps them at least as large
+ * as the view, then scaled and center cropped to exactly the view's size, so the cache holds no
+ * pixels which are never shown.
+ * <p>
+ * A loader which has to go to MediaStore and was asked for a {@link #setPreview(boolean) preview}
+ * first reads the tiny {@link MediaStore.Images.Thumbnails#MICRO_KIND} thumbnail, which the
+ * targets show until the full thumbnail is ready. Its file is resolved along with the rest of the
+ * page by {@link MediaStoreThumbnailPaths}.
+ *
+ * @see ThumbnailLoader
+ */
+public class ImageViewLoader<T> extends DecodeScheduler.Task {
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
     private static final int FADE_IN_TIME = 200;
-    protected static final int REQ_WIDTH = 300;
-    protected static final int REQ_HEIGHT = 200;
 
-    private final LruCache<T, Bitmap> mCache;
-    private final WeakReference<ImageView> mView;
+    private final ThumbnailLoader<T> mOwner;
     private final ContentResolver mContentResolver;
+    private final ThumbnailKey<T> mKey;
     private final T mId;
-    private boolean mPauseWork = false;
-    private final Object mPauseWorkLock = new Object();
+    private final int mPageSize;
+    private final int mSlot;
+    private final int mCellCount;
+    private final int mWidth;
+    private final int mHeight;
+    private final Bitmap.Config mConfig;
+    /** Views waiting for the bitmap. Only touched on the main thread. */
+    private final List<WeakReference<ImageView>> mTargets = new ArrayList<WeakReference<ImageView>>(1);
     private static final String TAG = "ImageViewLoader";
     private Resources mResources;
+    /** A larger cached variant of the image to scale down instead of decoding, retained in the pool. */
+    private Bitmap mSource;
+    private boolean mPreview;
 
-    public ImageViewLoader(ContentResolver contentResolver, Resources resources, LruCache<T, Bitmap> cache, ImageView view, T id) {
-        this.mCache = cache;
-        this.mView = new WeakReference<ImageView>(view);
+    /**
+     * @param page      The pager page the image is on, used to prioritize and cancel the load.
+     * @param slot      The image's cell on the page.
+     * @param cellCount The number of cells on the page, which is less than {@code pageSize} for the
+     *                  last one.
+     * @param width     The width of the views showing the image, in pixels.
+     * @param height    The height of the views showing the image, in pixels.
+     * @param config    The pixel format to decode to.
+     */
+    ImageViewLoader(ThumbnailLoader<T> owner, ContentResolver contentResolver, Resources resources, ThumbnailKey<T> key,
+                    int page, int pageSize, int slot, int cellCount, int width, int height, Bitmap.Config config) {
+        super(page);
+        this.mOwner = owner;
         this.mContentResolver = contentResolver;
         this.mResources = resources;
-        this.mId = id;
+        this.mKey = key;
+        this.mId = key.getId();
+        this.mPageSize = pageSize;
+        this.mSlot = slot;
+        this.mCellCount = cellCount;
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mConfig = config;
     }
 
-    public static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
+    ThumbnailKey<T> getKey() {
+        return mKey;
+    }
+
+    /**
+     * Scale {@code source}, a larger variant of the image which the owner retained in the pool,
+     * down instead of decoding the image. Must be called before the loader is submitted.
+     */
+    synchronized void deriveFrom(Bitmap source) {
+        mSource = source;
+    }
+
+    private synchronized Bitmap getSource() {
+        return mSource;
+    }
+
+    private synchronized void releaseSource() {
+        BitmapPool pool = mOwner.getPool();
+        if (mSource != null && pool != null) {
+            pool.release(mSource);
+        }
+        mSource = null;
+    }
+
+    /**
+     * Show this load's placeholder in {@code view} and deliver the bitmap to it once decoded.
+     *
+     * @param placeholder A low resolution variant of the image to show meanwhile, or {@code null}.
+     */
+    void addTarget(ImageView view, Bitmap placeholder) {
+        mTargets.add(new WeakReference<ImageView>(view));
+        view.setImageDrawable(new AsyncDrawable(mResources, placeholder, this));
+    }
+
+    /**
+     * Deliver the MICRO_KIND thumbnail to the targets before the full one if the image has to be
+     * read from MediaStore. Must be called before the loader is submitted.
+     */
+    void setPreview(boolean preview) {
+        mPreview = preview;
+    }
 
-        if (height > reqHeight || width > reqWidth) {
-            if (width > height) {
-                inSampleSize = Math.round((float) height / (float) reqHeight);
-            } else {
-                inSampleSize = Math.round((float) width / (float) reqWidth);
+    /** Stop delivering to {@code view}, which has been rebound to another image. */
+    void removeTarget(ImageView view) {
+        for (int i = mTargets.size() - 1; i >= 0; i--) {
+            ImageView target = mTargets.get(i).get();
+            if (target == null || target == view) {
+                mTargets.remove(i);
             }
         }
+    }
+
+    /**
+     * @return The largest power of two sample size, which decoders apply exactly, that keeps the
+     *         image at least as large as the requested size in both dimensions.
+     */
+    public static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        while (options.outWidth / (inSampleSize * 2) >= reqWidth && options.outHeight / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
         return inSampleSize;
     }
 
     public static Bitmap decodeSampledBitmap(String pathName, int reqWidth, int reqHeight) {
+        return decodeSampledBitmap(pathName, reqWidth, reqHeight, Bitmap.Config.ARGB_8888, null);
+    }
+
+    /**
+     * Decode {@code pathName} sampled down towards the requested size, reusing a bitmap from
+     * {@code pool} for the pixels where the platform allows it.
+     *
+     * @param config The preferred pixel format. Images with alpha may still decode to ARGB_8888.
+     */
+    @TargetApi(11)
+    public static Bitmap decodeSampledBitmap(String pathName, int reqWidth, int reqHeight, Bitmap.Config config,
+                                             BitmapPool pool) {
         final BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
         BitmapFactory.decodeFile(pathName, options);
         options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFile(pathName, options);
+        options.inPreferredConfig = config;
+        if (pool == null || !Utils.hasHoneycomb()) {
+            return BitmapFactory.decodeFile(pathName, options);
+        }
+
+        // Mutable bitmaps can go back to the pool once they are evicted.
+        options.inMutable = true;
+        // Before KitKat inBitmap needs an unsampled decode into a bitmap of exactly the same size.
+        Bitmap reusable = null;
+        if (options.inSampleSize == 1) {
+            reusable = pool.get(options.outWidth, options.outHeight, config);
+        }
+        if (reusable == null) {
+            return BitmapFactory.decodeFile(pathName, options);
+        }
+        options.inBitmap = reusable;
+        try {
+            return BitmapFactory.decodeFile(pathName, options);
+        } catch (IllegalArgumentException e) {
+            // The image format doesn't support reuse.
+            pool.put(reusable);
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(pathName, options);
+        }
+    }
+
+    /**
+     * Scale {@code bitmap} down until it just covers the requested size and crop the overflow
+     * evenly from both sides, like {@link ImageView.ScaleType#CENTER_CROP} does when drawing.
+     * Images are never scaled up; a dimension which is already smaller than requested is kept.
+     *
+     * @return A new bitmap in {@code config}, taken from {@code pool} if possible, or
+     *         {@code bitmap} itself if it already has the right size and config.
+     */
+    static Bitmap scaleToFill(Bitmap bitmap, int reqWidth, int reqHeight, Bitmap.Config config, BitmapPool pool) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        float scale = Math.min(1f, Math.max((float) reqWidth / width, (float) reqHeight / height));
+        int outWidth = Math.max(1, Math.min(reqWidth, Math.round(width * scale)));
+        int outHeight = Math.max(1, Math.min(reqHeight, Math.round(height * scale)));
+        if (outWidth == width && outHeight == height && bitmap.getConfig() == config) {
+            return bitmap;
+        }
+
+        Bitmap result = pool != null ? pool.get(outWidth, outHeight, config) : null;
+        if (result == null) {
+            result = Bitmap.createBitmap(outWidth, outHeight, config);
+        } else {
+            result.eraseColor(Color.TRANSPARENT);
+        }
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((outWidth - width * scale) / 2f, (outHeight - height * scale) / 2f);
+        new Canvas(result).drawBitmap(bitmap, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return result;
     }
 
     @Override
-    protected Bitmap doInBackground(Object... none) {
-        Bitmap bmp = mCache.get(mId);
-        if (bmp != null) return bmp;
-
-        // Wait here if work is paused and the task is not cancelled
-        synchronized (mPauseWorkLock) {
-            while (mPauseWork && !isCancelled()) {
-                try {
-                    mPauseWorkLock.wait();
-                } catch (InterruptedException ignore) {
+    protected void runTask() {
+        final Bitmap bitmap = doInBackground();
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                mOwner.onLoadFinished(ImageViewLoader.this, bitmap);
+            }
+        });
+    }
+
+    @TargetApi(11)
+    private Bitmap doInBackground() {
+        Bitmap bmp = null;
+        BitmapPool pool = mOwner.getPool();
+        ThumbnailAtlas atlas = mId instanceof Long ? mOwner.getAtlas() : null;
+        // Atlases are per grid layout, portrait and landscape cells differ in size.
+        String layout = mPageSize + "-" + mKey.getSizeTag();
+        DiskThumbnailCache diskCache = mOwner.getDiskCache();
+        String diskKey = diskCache != null ? ThumbnailLoader.diskKey(mKey) : null;
+
+        Bitmap source = getSource();
+        if (source != null) {
+            bmp = scaleToFill(source, mWidth, mHeight, mConfig, pool);
+            releaseSource();
+            if (bmp != source) {
+                store(bmp, atlas, layout, diskCache, diskKey);
+                return bmp;
+            }
+            bmp = null;
+        }
+
+        if (atlas != null) {
+            bmp = atlas.get(layout, mPage, mSlot, mCellCount, (Long) mId, pool);
+            if (bmp != null) {
+                return bmp;
+            }
+        }
+
+        if (diskCache != null) {
+            File file = diskCache.get(diskKey);
+            if (file != null) {
+                // Stored thumbnails normally have the requested size already, so this decode can reuse a
+                // pooled bitmap and needs no scaling.
+                bmp = fit(decodeSampledBitmap(file.getPath(), mWidth, mHeight, mConfig, pool), pool);
+                if (bmp != null) {
+                    store(bmp, atlas, layout, null, null);
+                    return bmp;
                 }
             }
         }
 
-        if (isCancelled() || mView == null || mView.get() == null) return null;
+        if (isCancelled()) return null;
 
         long mediaStoreId = 0; // check if we have the bitmap in OS MediaStore
         if (mId instanceof String) {
-            bmp = decodeSampledBitmap((String) mId, REQ_WIDTH, REQ_HEIGHT);
+            bmp = decodeSampledBitmap((String) mId, mWidth, mHeight, mConfig, pool);
         } else if (mId instanceof Uri) {
             Uri uri = (Uri) mId;
             String scheme = uri.getScheme();
             if ("content".equals(scheme))
                 mediaStoreId = Long.parseLong(uri.getLastPathSegment());
             else if ("file".equals(scheme))
-                bmp = decodeSampledBitmap(uri.getPath(), REQ_WIDTH, REQ_HEIGHT);
+                bmp = decodeSampledBitmap(uri.getPath(), mWidth, mHeight, mConfig, pool);
         } else if (mId instanceof Long) {
             mediaStoreId = (Long) mId;
         }
 
-        if (!isCancelled() && mediaStoreId != 0)
-            // load thumbnail from media store
-            bmp = MediaStore.Images.Thumbnails.getThumbnail(mContentResolver, mediaStoreId, MediaStore.Images.Thumbnails.MINI_KIND, null);
+        MediaStoreThumbnailPaths thumbnailPaths = mOwner.getThumbnailPaths();
+        if (mPreview && !isCancelled() && mediaStoreId != 0) {
+            // Micro thumbnails are tiny, so this is quick.
+            final Bitmap preview = decodePreview(mediaStoreId, thumbnailPaths);
+            if (preview != null) {
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mOwner.onPreview(ImageViewLoader.this, preview);
+                    }
+                });
+            }
+        }
+
+        if (!isCancelled() && mediaStoreId != 0 && thumbnailPaths != null) {
+            // The file MediaStore keeps the thumbnail in, resolved along with the rest of the page.
+            String path = thumbnailPaths.getPath(mediaStoreId);
+            if (path != null) {
+                bmp = decodeSampledBitmap(path, mWidth, mHeight, mConfig, pool);
+            }
+        }
+
+        if (!isCancelled() && mediaStoreId != 0 && bmp == null) {
+            // load thumbnail from media store. Its size isn't known up front so it can't decode
+            // into a pooled bitmap, but a mutable result can be pooled after it was scaled.
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = mConfig;
+            if (pool != null && Utils.hasHoneycomb()) {
+                options.inMutable = true;
+            }
+            bmp = MediaStore.Images.Thumbnails.getThumbnail(mContentResolver, mediaStoreId, MediaStore.Images.Thumbnails.MINI_KIND, options);
+        }
+
+        bmp = fit(bmp, pool);
+        if (bmp != null && !isCancelled()) {
+            store(bmp, atlas, layout, diskCache, diskKey);
+        }
 
         return bmp;
     }
 
-    @Override
-    protected void onPostExecute(Bitmap bitmap) {
-        if (!isCancelled() && mView != null && bitmap != null) {
-            mCache.put(mId, bitmap);
-            final ImageView imageView = mView.get();
-            if (imageView != null) {
-                setImageBitmap(imageView, bitmap);
-            }
+    /**
+     * @param paths The thumbnail files resolved for the page, or {@code null} to ask MediaStore.
+     * @return The MICRO_KIND thumbnail of image {@code id}, or {@code null}.
+     */
+    private Bitmap decodePreview(long id, MediaStoreThumbnailPaths paths) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = mConfig;
+        if (paths == null) {
+            return MediaStore.Images.Thumbnails.getThumbnail(mContentResolver, id, MediaStore.Images.Thumbnails.MICRO_KIND, options);
         }
+        // An image without a micro thumbnail file goes without a preview rather than costing a round trip to the
+        // provider. Its MINI_KIND file is read right after.
+        String path = paths.getMicroPath(id);
+        return path != null ? BitmapFactory.decodeFile(path, options) : null;
     }
 
-    @Override
-    protected void onCancelled() {
-        super.onCancelled();
-        synchronized (mPauseWorkLock) {
-            mPauseWorkLock.notifyAll();
+    /** Write a fitted {@code bitmap} through to the atlas and the disk cache, where present. */
+    private void store(Bitmap bitmap, ThumbnailAtlas atlas, String layout, DiskThumbnailCache diskCache, String diskKey) {
+        if (atlas != null) {
+            atlas.put(layout, mPage, mSlot, mCellCount, (Long) mId, bitmap);
+        }
+        if (diskCache != null) {
+            diskCache.put(diskKey, bitmap);
         }
     }
 
-    public void setPauseWork(boolean pauseWork) {
-        synchronized (mPauseWorkLock) {
-            mPauseWork = pauseWork;
-            if (!mPauseWork) {
-                mPauseWorkLock.notifyAll();
+    /** Bring a decoded {@code bitmap} to the views' size and config, releasing the original. */
+    private Bitmap fit(Bitmap bitmap, BitmapPool pool) {
+        if (bitmap == null) {
+            return null;
+        }
+        Bitmap fitted = scaleToFill(bitmap, mWidth, mHeight, mConfig, pool);
+        if (fitted != bitmap && (pool == null || !pool.put(bitmap))) {
+            bitmap.recycle();
+        }
+        return fitted;
+    }
+
+    /** Show a low resolution {@code preview} on every target which is still waiting for this load. */
+    void deliverPreview(Bitmap preview) {
+        for (WeakReference<ImageView> reference : mTargets) {
+            final ImageView imageView = reference.get();
+            if (imageView != null && getBitmapWorkerTask(imageView) == this) {
+                mOwner.showPreview(imageView, this, preview);
             }
         }
     }
 
+    /** Set {@code bitmap} on every target which is still waiting for this load. */
+    void deliver(Bitmap bitmap) {
+        for (WeakReference<ImageView> reference : mTargets) {
+            final ImageView imageView = reference.get();
+            if (imageView != null && getBitmapWorkerTask(imageView) == this) {
+                mOwner.show(imageView, bitmap);
+            }
+        }
+        mTargets.clear();
+    }
+
+    /** Must be called on the main thread. */
+    @Override
+    public void cancel() {
+        super.cancel();
+        releaseSource();
+        mOwner.onLoadCancelled(this);
+    }
+
     /**
      * Called when the processing is complete and the final bitmap should be set on the ImageView.
      *
      * @param imageView
      * @param bitmap
+     * @param resources
      */
-    private void setImageBitmap(ImageView imageView, Bitmap bitmap) {
+    static void setImageBitmap(ImageView imageView, Bitmap bitmap, Resources resources) {
         boolean mFadeInBitmap = false;
         if (mFadeInBitmap) {
-            final TransitionDrawable td = new TransitionDrawable(new Drawable[]{new ColorDrawable(android.R.color.transparent), new BitmapDrawable(mResources, bitmap)});
+            final TransitionDrawable td = new TransitionDrawable(new Drawable[]{new ColorDrawable(android.R.color.transparent), new BitmapDrawable(resources, bitmap)});
             // Set background to loading bitmap
             //imageView.setBackgroundDrawable(
             //        new BitmapDrawable(mResources, mLoadingBitmap));
@@ -175,32 +451,12 @@ public class ImageViewLoader<T> extends AsyncTask<Object, Object, Bitmap> {
     }
 
 
-    /**
-     * Returns true if the current work has been canceled or if there was no work in
-     * progress on this image view.
-     * Returns false if the work in progress deals with the same data. The work is not
-     * stopped in that case.
-     */
-    public static boolean cancelPotentialWork(Object id, ImageView imageView) {
-        final ImageViewLoader bitmapWorkerTask = getBitmapWorkerTask(imageView);
-
-        if (bitmapWorkerTask != null) {
-            final Object bitmapData = bitmapWorkerTask.mId;
-            if (bitmapData != null && !bitmapData.equals(id)) {
-                bitmapWorkerTask.cancel(true);
-            } else {
-                return false;
-            }
-        }
-        return true;
-    }
-
     /**
      * @param imageView Any imageView
      * @return Retrieve the currently active work task (if any) associated with this imageView.
      *         null if there is no such task.
      */
-    private static ImageViewLoader getBitmapWorkerTask(ImageView imageView) {
+    static ImageViewLoader getBitmapWorkerTask(ImageView imageView) {
         if (imageView != null) {
             final Drawable drawable = imageView.getDrawable();
             if (drawable instanceof AsyncDrawable) {
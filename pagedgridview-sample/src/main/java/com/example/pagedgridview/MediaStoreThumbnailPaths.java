@@ -0,0 +1,174 @@
+package com.example.pagedgridview;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.MediaStore;
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Finds the files MediaStore keeps its {@link MediaStore.Images.Thumbnails#MINI_KIND} and
+ * {@link MediaStore.Images.Thumbnails#MICRO_KIND} thumbnails in, a page at a time.
+ * <p>
+ * The adapter {@link #register(long[]) registers} the images of a page when it binds or prefetches
+ * it. The first decode of the page to ask for a path resolves the whole page with one query; the
+ * other decodes of the page wait for it and then read their files in parallel. This replaces one
+ * {@link MediaStore.Images.Thumbnails#getThumbnail} round trip to the media provider per image.
+ * Images MediaStore has no thumbnail file for yet resolve to {@code null}, so the caller falls
+ * back to {@code getThumbnail}, which creates one.
+ * <p>
+ * {@link #register(long[])} may be called on any thread, {@link #getPath(long)} and
+ * {@link #getMicroPath(long)} should be called on a background thread.
+ */
+public class MediaStoreThumbnailPaths {
+    private static final int MAX_PATHS = 512;
+    private static final int MAX_PENDING = 256;
+    private static final String[] PROJECTION = new String[]{
+            MediaStore.Images.Thumbnails.IMAGE_ID, MediaStore.Images.Thumbnails.KIND, MediaStore.Images.Thumbnails.DATA
+    };
+
+    private final ContentResolver mContentResolver;
+    private final LruCache<Long, Resolved> mPaths = new LruCache<Long, Resolved>(MAX_PATHS);
+    /** The batch each registered but unresolved image belongs to, oldest first. */
+    private final LinkedHashMap<Long, Batch> mPending = new LinkedHashMap<Long, Batch>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Batch> eldest) {
+            // Pages the user never waited for. Their images are resolved one by one if needed.
+            return size() > MAX_PENDING;
+        }
+    };
+
+    public MediaStoreThumbnailPaths(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    /** Resolve the images {@code ids} together once one of them is asked for. */
+    public synchronized void register(long[] ids) {
+        int count = 0;
+        long[] unresolved = new long[ids.length];
+        for (long id : ids) {
+            if (mPaths.get(id) == null && !mPending.containsKey(id)) {
+                unresolved[count++] = id;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        Batch batch = new Batch(unresolved, count);
+        for (int i = 0; i < count; i++) {
+            mPending.put(unresolved[i], batch);
+        }
+    }
+
+    /**
+     * @return The thumbnail file of image {@code id}, or {@code null} if MediaStore has none or the
+     *         image was not registered.
+     */
+    public String getPath(long id) {
+        Resolved resolved = resolve(id);
+        return resolved != null ? resolved.mPath : null;
+    }
+
+    /**
+     * @return The MICRO_KIND thumbnail file of image {@code id}, or {@code null} if MediaStore has
+     *         none or the image was not registered.
+     */
+    public String getMicroPath(long id) {
+        Resolved resolved = resolve(id);
+        return resolved != null ? resolved.mMicroPath : null;
+    }
+
+    /** @return The files of image {@code id}, resolving its batch if needed, or {@code null}. */
+    private Resolved resolve(long id) {
+        Batch batch;
+        synchronized (this) {
+            Resolved resolved = mPaths.get(id);
+            if (resolved != null) {
+                return resolved;
+            }
+            batch = mPending.get(id);
+        }
+        if (batch == null) {
+            return null;
+        }
+        batch.resolve();
+        synchronized (this) {
+            return mPaths.get(id);
+        }
+    }
+
+    /** The outcome of resolving an image, cached whether or not MediaStore has files for it. */
+    private static final class Resolved {
+        /** The MINI_KIND thumbnail file, or {@code null} if there is none. */
+        String mPath;
+        /** The MICRO_KIND thumbnail file, or {@code null} if there is none. */
+        String mMicroPath;
+    }
+
+    /** The images of one page. */
+    private final class Batch {
+        private final long[] mIds;
+        private final int mCount;
+        private boolean mResolved;
+
+        Batch(long[] ids, int count) {
+            mIds = ids;
+            mCount = count;
+        }
+
+        /** Query the paths of every image in the batch, unless another thread already did. */
+        synchronized void resolve() {
+            if (mResolved) {
+                return;
+            }
+            mResolved = true;
+            Map<Long, Resolved> paths = new HashMap<Long, Resolved>(mCount);
+            // Both kinds in one query, so the previews don't cost a round trip per image either.
+            StringBuilder selection = new StringBuilder()
+                    .append(MediaStore.Images.Thumbnails.KIND).append(" IN (").append(MediaStore.Images.Thumbnails.MINI_KIND)
+                    .append(',').append(MediaStore.Images.Thumbnails.MICRO_KIND).append(") AND ")
+                    .append(MediaStore.Images.Thumbnails.IMAGE_ID).append(" IN (");
+            for (int i = 0; i < mCount; i++) {
+                if (i > 0) {
+                    selection.append(',');
+                }
+                selection.append(mIds[i]);
+            }
+            selection.append(')');
+            Cursor cursor = mContentResolver.query(MediaStore.Images.Thumbnails.EXTERNAL_CONTENT_URI, PROJECTION,
+                    selection.toString(), null, null);
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        Resolved resolved = paths.get(cursor.getLong(0));
+                        if (resolved == null) {
+                            resolved = new Resolved();
+                            paths.put(cursor.getLong(0), resolved);
+                        }
+                        if (cursor.getInt(1) == MediaStore.Images.Thumbnails.MICRO_KIND) {
+                            resolved.mMicroPath = cursor.getString(2);
+                        } else {
+                            resolved.mPath = cursor.getString(2);
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            synchronized (MediaStoreThumbnailPaths.this) {
+                for (int i = 0; i < mCount; i++) {
+                    long id = mIds[i];
+                    Resolved resolved = paths.get(id);
+                    mPaths.put(id, resolved != null ? resolved : new Resolved());
+                    if (mPending.get(id) == this) {
+                        mPending.remove(id);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,14 +1,13 @@
 package com.example.pagedgridview;
 
-import android.content.ContentResolver;
 import android.content.Context;
-import android.content.res.Resources;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.DataSetObserver;
 import android.graphics.Bitmap;
 import android.os.Handler;
 import android.provider.BaseColumns;
+import android.support.v4.view.ViewPager;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -23,29 +22,61 @@ import com.jakewharton.salvage.RecyclingGridPagerAdapter;
  * Time: 12:30 AM
  */
 
-public class SampleCursorAdapter extends RecyclingGridPagerAdapter {
+/**
+ * Shows the images of a MediaStore cursor in pages of thumbnails.
+ * <p>
+ * Set the adapter as the pager's {@link ViewPager.OnPageChangeListener} to prefetch the
+ * thumbnails of the pages ahead of the direction the user is swiping in, and to hold back decoding
+ * and showing thumbnails while the pager is dragged or settling.
+ * <p>
+ * The decoded thumbnails live in {@link Caches}, which an activity can keep across configuration
+ * changes so a rotated grid starts from the thumbnails it already has. The activity closes the
+ * caches once it finishes.
+ */
+public class SampleCursorAdapter extends RecyclingGridPagerAdapter implements ViewPager.OnPageChangeListener {
+    /** Longest time {@link #close()} waits for running decodes, well below an ANR. */
+    private static final long CLOSE_TIMEOUT_MS = 500;
+
     private final LayoutInflater inflater;
     private Cursor cursor;
-    private BitmapLruCache<Long> cache;
-    private Resources resources;
-    private ContentResolver cr;
+    private final Caches caches;
     private boolean autoRequery;
     private boolean dataValid;
     private int rowIDColumn;
+    private final DecodeScheduler scheduler = new DecodeScheduler();
+    private final ThumbnailLoader<Long> thumbnails;
+    private final MediaStoreThumbnailPaths thumbnailPaths;
+    private int prefetchPages;
+    /** 1 when swiping towards higher pages, -1 towards lower ones and 0 before the first swipe. */
+    private int direction;
+    private float lastScrollPosition = -1;
+    private int currentPage;
 
     public SampleCursorAdapter(Context context, Cursor cursor) {
         this(context, cursor, true);
     }
 
     public SampleCursorAdapter(Context context, Cursor cursor, boolean autoRequery) {
+        this(context, cursor, autoRequery, new Caches(context));
+    }
+
+    public SampleCursorAdapter(Context context, Cursor cursor, Caches caches) {
+        this(context, cursor, true, caches);
+    }
+
+    public SampleCursorAdapter(Context context, Cursor cursor, boolean autoRequery, Caches caches) {
         super(context, R.layout.page, 0);
 
         inflater = LayoutInflater.from(context);
         this.cursor = cursor;
         this.autoRequery = autoRequery;
-        cache = new BitmapLruCache<Long>(context);
-        resources = context.getResources();
-        cr = context.getContentResolver();
+        this.caches = caches;
+        thumbnails = new ThumbnailLoader<Long>(context, caches.cache, caches.pool, caches.diskCache, scheduler);
+        thumbnails.setAtlas(caches.atlas);
+        thumbnailPaths = new MediaStoreThumbnailPaths(context.getContentResolver());
+        thumbnails.setThumbnailPaths(thumbnailPaths);
+        // Photos have no transparency.
+        thumbnails.setDecodeConfig(Bitmap.Config.RGB_565);
 
         dataValid = (cursor != null && !cursor.isClosed());
         rowIDColumn = dataValid ? cursor.getColumnIndexOrThrow(BaseColumns._ID) : -1;
@@ -88,24 +119,13 @@ public class SampleCursorAdapter extends RecyclingGridPagerAdapter {
             holder = (ViewHolder) view.getTag();
             recycled = "Yes";
         } else {
-            view = inflater.inflate(R.layout.item, container, false);
-            holder = new ViewHolder(view);
-            view.setTag(holder);
+            view = newView(getItemViewType(position), container);
+            holder = (ViewHolder) view.getTag();
         }
 
         cursor.moveToPosition(position);
         Long cover = cursor.getLong(rowIDColumn);
-        final Bitmap bitmap = cache.get(cover);
-
-        boolean cancel = ImageViewLoader.cancelPotentialWork(cover, holder.image);
-        if (bitmap != null) {
-            holder.image.setImageBitmap(bitmap);
-        } else if (cancel) {
-            ImageViewLoader loader = new ImageViewLoader<Long>(cr, resources, cache, holder.image, cover);
-            ImageViewLoader.AsyncDrawable ad = new ImageViewLoader.AsyncDrawable(resources, null, loader);
-            holder.image.setImageDrawable(ad);
-            loader.execute();
-        }
+        thumbnails.load(cover, holder.image, position, getPageSize(), getItemCount());
 
         holder.position.setText(String.valueOf(position));
         holder.recycled.setText(recycled);
@@ -114,6 +134,146 @@ public class SampleCursorAdapter extends RecyclingGridPagerAdapter {
     }
 
 
+    /** Have the thumbnail files of the page resolved together once its first cell needs one. */
+    @Override
+    protected void onBindPage(int page, int firstPosition, int count) {
+        registerPage(firstPosition, count);
+    }
+
+    private void registerPage(int firstPosition, int count) {
+        if (!dataValid) {
+            return;
+        }
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            cursor.moveToPosition(firstPosition + i);
+            ids[i] = cursor.getLong(rowIDColumn);
+        }
+        thumbnailPaths.register(ids);
+    }
+
+    @Override
+    public void setPrimaryItem(ViewGroup container, int position, Object object) {
+        super.setPrimaryItem(container, position, object);
+        scheduler.setCurrentPage(position);
+    }
+
+    /**
+     * @param pages The number of pages beyond the current one whose thumbnails are loaded ahead of
+     *              the swipe direction, or 0 to disable prefetching.
+     */
+    public void setPrefetchPages(int pages) {
+        prefetchPages = pages;
+        if (pages == 0) {
+            scheduler.cancelPrefetch();
+        }
+    }
+
+    @Override
+    public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+        float scrollPosition = position + positionOffset;
+        if (lastScrollPosition >= 0 && scrollPosition != lastScrollPosition) {
+            int scrollDirection = scrollPosition > lastScrollPosition ? 1 : -1;
+            if (scrollDirection != direction) {
+                // The user turned around, the pages prefetched so far are behind them now.
+                direction = scrollDirection;
+                scheduler.cancelPrefetch();
+                prefetch();
+            }
+        }
+        lastScrollPosition = scrollPosition;
+    }
+
+    @Override
+    public void onPageSelected(int page) {
+        currentPage = page;
+        prefetch();
+    }
+
+    @Override
+    public void onPageScrollStateChanged(int state) {
+        thumbnails.setPaused(state != ViewPager.SCROLL_STATE_IDLE);
+    }
+
+    /** Queue the thumbnails of the pages ahead of the current one in the swipe direction. */
+    private void prefetch() {
+        if (prefetchPages == 0 || direction == 0 || !dataValid) {
+            return;
+        }
+        int pageSize = getPageSize();
+        int itemCount = getItemCount();
+        for (int i = 1; i <= prefetchPages; i++) {
+            int start = (currentPage + direction * i) * pageSize;
+            if (start < 0 || start >= itemCount) {
+                break;
+            }
+            int end = Math.min(start + pageSize, itemCount);
+            registerPage(start, end - start);
+            for (int position = start; position < end; position++) {
+                cursor.moveToPosition(position);
+                thumbnails.prefetch(cursor.getLong(rowIDColumn), position, pageSize, itemCount);
+            }
+        }
+    }
+
+    /**
+     * Cancel the loads which have not started for a page that left the pager. Its cells whose
+     * thumbnail is not cached are marked so they start loading again if the page comes back.
+     */
+    @Override
+    protected void onPageDestroyed(int page) {
+        if (scheduler.cancelPage(page) == 0 || !dataValid) {
+            return;
+        }
+        int start = page * getPageSize();
+        int end = Math.min(start + getPageSize(), getItemCount());
+        for (int position = start; position < end; position++) {
+            cursor.moveToPosition(position);
+            if (!thumbnails.isCached(cursor.getLong(rowIDColumn))) {
+                notifyItemChanged(position);
+            }
+        }
+    }
+
+    /** Stop displaying the thumbnail of a cell which is scrapped, evicted or trimmed. */
+    @Override
+    protected void onViewRecycled(View cell) {
+        thumbnails.recycle(((ViewHolder) cell.getTag()).image);
+    }
+
+    /**
+     * Stop loading thumbnails. The adapter must not be used afterwards, but its {@link #getCaches()
+     * caches} may be passed to a new one.
+     */
+    public void close() {
+        scheduler.shutdown();
+        thumbnails.close();
+        // A decode which is still running may hold a pooled bitmap as its source or inBitmap, so
+        // the pool is left as it is if one does not finish in time.
+        if (scheduler.awaitTermination(CLOSE_TIMEOUT_MS)) {
+            // The views which displayed the cached bitmaps are gone.
+            caches.pool.releaseAll();
+        }
+    }
+
+    public Caches getCaches() {
+        return caches;
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        super.trimMemory(level);
+        caches.cache.trimMemory(level);
+        caches.pool.trimMemory(level);
+    }
+
+    @Override
+    public View newView(int viewType, ViewGroup container) {
+        View view = inflater.inflate(R.layout.item, container, false);
+        view.setTag(new ViewHolder(view));
+        return view;
+    }
+
     @Override
     protected int getItemCount() {
         if (dataValid && cursor != null) {
@@ -123,6 +283,31 @@ public class SampleCursorAdapter extends RecyclingGridPagerAdapter {
         }
     }
 
+    /**
+     * The decoded thumbnails in memory and on disk, which hold no reference to an activity. The disk
+     * cache and the atlases must only be opened once per directory, so adapters share them through
+     * this object rather than creating their own.
+     */
+    public static class Caches {
+        final BitmapPool pool;
+        final ThumbnailCache<Long> cache;
+        final DiskThumbnailCache diskCache;
+        final ThumbnailAtlas atlas;
+
+        public Caches(Context context) {
+            pool = new BitmapPool(context);
+            cache = new ThumbnailCache<Long>(context, pool);
+            diskCache = new DiskThumbnailCache(context);
+            atlas = new ThumbnailAtlas(context);
+        }
+
+        /** Close the disk caches once no adapter will use them again. */
+        public void close() {
+            diskCache.close();
+            atlas.close();
+        }
+    }
+
     private static class ViewHolder {
         final ImageView image;
         final TextView position;
@@ -9,6 +9,7 @@ import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewPager;
+import com.jakewharton.salvage.TrimLevels;
 
 /**
  * User: Andrew Matuk (Veon)
@@ -17,6 +18,8 @@ import android.support.v4.view.ViewPager;
  */
 
 public class SimpleActivity extends FragmentActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+    private static final int PREFETCH_PAGES = 2;
+
     SampleCursorAdapter adapter;
 
     @Override
@@ -29,11 +32,49 @@ public class SimpleActivity extends FragmentActivity implements LoaderManager.Lo
         viewPager.setId(R.id.primary);
 
         setContentView(viewPager);
-        adapter = new SampleCursorAdapter(this, null);
+        // Keep the thumbnails decoded for the previous orientation.
+        SampleCursorAdapter.Caches caches = (SampleCursorAdapter.Caches) getLastCustomNonConfigurationInstance();
+        if (caches == null) {
+            caches = new SampleCursorAdapter.Caches(this);
+        }
+        adapter = new SampleCursorAdapter(this, null, caches);
+        adapter.setPrewarmEnabled(true);
+        adapter.setPrefetchPages(PREFETCH_PAGES);
         viewPager.setAdapter(adapter);
+        viewPager.setOnPageChangeListener(adapter);
         getSupportLoaderManager().initLoader(0, null, this);
     }
 
+    /** Only called from API 14 on. */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        adapter.trimMemory(level);
+    }
+
+    /** The only memory callback below API 14. */
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        adapter.trimMemory(TrimLevels.TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return adapter.getCaches();
+    }
+
+    @Override
+    protected void onDestroy() {
+        adapter.setPrewarmEnabled(false);
+        adapter.close();
+        if (isFinishing()) {
+            // Otherwise the caches are handed to the activity created for the new configuration.
+            adapter.getCaches().close();
+        }
+        super.onDestroy();
+    }
+
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
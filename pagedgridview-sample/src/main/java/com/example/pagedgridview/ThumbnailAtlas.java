@@ -0,0 +1,511 @@
+package com.example.pagedgridview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs the thumbnails of every cell of a pager page into a single file which is memory-mapped
+ * when read, so showing a page costs one file open and one mapping instead of one per cell.
+ * <p>
+ * An atlas starts with a small index, one entry per cell giving the image id, the cell's slot on
+ * the page, the bitmap's dimensions and config and where its pixels are, followed by the raw
+ * pixels of every cell. Pixels are copied straight from the mapping into a bitmap, so reading a
+ * cell involves no decoding at all.
+ * <p>
+ * Atlases are rebuilt incrementally. Cells are collected as they are decoded and the atlas is
+ * written once every cell of the page is known. When the cursor changes, the first cell missing
+ * from a page's atlas starts a rebuild seeded with the old atlas. Cells whose slot still holds the
+ * same image are carried over as they are read, so only the cells which actually changed have to
+ * be decoded again. Atlases are named by page number and by a layout, which tells apart grids that
+ * split the images into pages or size their cells differently.
+ * <p>
+ * Atlases hold raw pixels, so they are bounded by a byte budget rather than a number of files.
+ * The least recently used atlases are deleted once their total size exceeds it.
+ * <p>
+ * All methods are thread safe. Files are mapped, written and deleted outside of the lock, so a
+ * decode writing a page's atlas doesn't hold up the decodes reading other pages. The atlas
+ * directory is created lazily, which should happen on a background thread. There must only be one
+ * instance per directory, since the pages being rebuilt are only known to the instance collecting
+ * them.
+ */
+public class ThumbnailAtlas {
+    private static final String TAG = "ThumbnailAtlas";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x5341544c; // "SATL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    /** id, slot, width, height, config, offset and length. */
+    private static final int ENTRY_SIZE = 8 + 6 * 4;
+    private static final int MAX_MAPPINGS = 3;
+    private static final int MAX_BUILDERS = 3;
+    /** About ten pages of twelve 256 pixel RGB_565 thumbnails. */
+    public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+    private static final Bitmap.Config[] CONFIGS = Bitmap.Config.values();
+
+    private final Context mContext;
+    private final long mMaxSize;
+    private File mDirectory;
+    private boolean mClosed;
+    /** Sizes of the atlas files on disk, least recently used first. */
+    private LinkedHashMap<String, Long> mFiles;
+    private long mSize;
+    /** Recently read atlases, least recently used first. */
+    private final LinkedHashMap<String, Mapping> mMappings = new LinkedHashMap<String, Mapping>(0, 0.75f, true);
+    /** Atlases waiting for the rest of their cells, least recently used first. */
+    private final LinkedHashMap<String, Builder> mBuilders = new LinkedHashMap<String, Builder>(0, 0.75f, true);
+
+    public ThumbnailAtlas(Context context) {
+        this(context, DEFAULT_MAX_SIZE);
+    }
+
+    /** @param maxSize The number of bytes the atlas files may take up on disk. */
+    public ThumbnailAtlas(Context context, long maxSize) {
+        mContext = context.getApplicationContext();
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @param layout    Identifies the grid, like the page size and cell size.
+     * @param cellCount The number of cells on the page now, used if the atlas must be rebuilt.
+     * @return The thumbnail of image {@code id} in {@code slot} of {@code page}, copied into a
+     *         bitmap from {@code pool} if possible, or {@code null} if the page's atlas doesn't hold
+     *         it.
+     */
+    public Bitmap get(String layout, int page, int slot, int cellCount, long id, BitmapPool pool) {
+        String name = name(layout, page);
+        Mapping mapping = mapping(name);
+        if (mapping == null) {
+            return null;
+        }
+        int entry = mapping.find(slot, id);
+        Builder complete = null;
+        synchronized (this) {
+            if (mClosed) {
+                return null;
+            }
+            if (entry < 0) {
+                // The page changed since the atlas was written.
+                builder(name, cellCount, mapping);
+            } else {
+                mapping.served[entry] = true;
+                Builder builder = mBuilders.get(name);
+                if (builder != null) {
+                    // The cell is unchanged, carry it over into the atlas being rebuilt.
+                    builder.set(slot, id, mapping.widths[entry], mapping.heights[entry],
+                            CONFIGS[mapping.configs[entry]], mapping.pixels(entry), true);
+                    complete = takeIfComplete(name, builder);
+                }
+            }
+        }
+        if (complete != null) {
+            write(name, complete);
+        }
+        if (entry < 0) {
+            return null;
+        }
+
+        // The mapping never changes, so the pixels are copied without holding the lock.
+        int width = mapping.widths[entry];
+        int height = mapping.heights[entry];
+        Bitmap.Config config = CONFIGS[mapping.configs[entry]];
+        Bitmap bitmap = null;
+        if (pool != null) {
+            bitmap = pool.get(width, height, config);
+        }
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.copyPixelsFromBuffer(mapping.pixels(entry));
+        return bitmap;
+    }
+
+    /**
+     * Record the thumbnail of image {@code id} in {@code slot} of {@code page}. The page's atlas is
+     * written once all of its {@code cellCount} cells have been recorded.
+     */
+    public void put(String layout, int page, int slot, int cellCount, long id, Bitmap bitmap) {
+        if (bitmap.getConfig() == null) {
+            return;
+        }
+        String name = name(layout, page);
+        Mapping mapping = mapping(name);
+        // The only copy of the pixels, the builder keeps this buffer until the atlas is written.
+        ByteBuffer pixels = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.rewind();
+        Builder complete;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            Builder builder = builder(name, cellCount, mapping);
+            builder.set(slot, id, bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), pixels, true);
+            complete = takeIfComplete(name, builder);
+        }
+        if (complete != null) {
+            write(name, complete);
+        }
+    }
+
+    /** Drop the mapped atlases and the pages being collected. Nothing is read or written afterwards. */
+    public synchronized void close() {
+        mClosed = true;
+        mMappings.clear();
+        mBuilders.clear();
+    }
+
+    /**
+     * @param mapping The current atlas of {@code name}, or {@code null} if there is none.
+     * @return The builder for atlas {@code name}, starting one seeded with the cells of
+     *         {@code mapping} if there is none.
+     */
+    private Builder builder(String name, int cellCount, Mapping mapping) {
+        Builder builder = mBuilders.get(name);
+        if (builder != null && builder.cellCount == cellCount) {
+            return builder;
+        }
+        builder = new Builder(cellCount);
+        if (mapping != null) {
+            for (int i = 0; i < mapping.ids.length; i++) {
+                // Cells read since the atlas was mapped are known to be current. Their pixels stay
+                // in the mapping, which remains valid even once the file is replaced.
+                builder.set(mapping.slots[i], mapping.ids[i], mapping.widths[i], mapping.heights[i],
+                        CONFIGS[mapping.configs[i]], mapping.pixels(i), mapping.served[i]);
+            }
+        }
+        mBuilders.put(name, builder);
+        if (mBuilders.size() > MAX_BUILDERS) {
+            mBuilders.remove(mBuilders.keySet().iterator().next());
+        }
+        return builder;
+    }
+
+    /** @return {@code builder}, no longer registered, if it holds every cell of its page. */
+    private Builder takeIfComplete(String name, Builder builder) {
+        if (!builder.isComplete()) {
+            return null;
+        }
+        mBuilders.remove(name);
+        return builder;
+    }
+
+    /** Write the atlas {@code name} and delete the least recently used ones beyond the budget. */
+    private void write(String name, Builder builder) {
+        File directory = directory();
+        if (directory == null) {
+            return;
+        }
+        File tmp = null;
+        FileOutputStream out = null;
+        try {
+            // Unique, since a newer builder of the same page may be written at the same time.
+            tmp = File.createTempFile(name, TMP_SUFFIX, directory);
+            out = new FileOutputStream(tmp);
+            FileChannel channel = out.getChannel();
+            channel.write(builder.header());
+            for (ByteBuffer pixels : builder.pixels) {
+                channel.write(pixels.duplicate());
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(new File(directory, name))) {
+                throw new IOException("Unable to rename " + tmp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + name, e);
+            if (tmp != null) {
+                tmp.delete();
+            }
+            return;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        List<String> evicted = new ArrayList<String>();
+        synchronized (this) {
+            mMappings.remove(name);
+            Long previous = mFiles.put(name, builder.size());
+            if (previous != null) {
+                mSize -= previous;
+            }
+            mSize += builder.size();
+            Iterator<Map.Entry<String, Long>> iterator = mFiles.entrySet().iterator();
+            while (mSize > mMaxSize && iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                mSize -= entry.getValue();
+                mMappings.remove(entry.getKey());
+                evicted.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        for (String file : evicted) {
+            new File(directory, file).delete();
+        }
+    }
+
+    /** @return The mapped atlas {@code name}, mapping its file if it isn't yet, or {@code null}. */
+    private Mapping mapping(String name) {
+        synchronized (this) {
+            Mapping mapping = mMappings.get(name);
+            if (mapping != null || mClosed) {
+                return mapping;
+            }
+        }
+        File directory = directory();
+        if (directory == null) {
+            return null;
+        }
+        File file = new File(directory, name);
+        if (!file.exists()) {
+            return null;
+        }
+        Mapping mapping;
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            MappedByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+            mapping = new Mapping(buffer);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to map " + name, e);
+            file.delete();
+            synchronized (this) {
+                Long size = mFiles.remove(name);
+                if (size != null) {
+                    mSize -= size;
+                }
+            }
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    // The mapping stays valid after the file is closed.
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        synchronized (this) {
+            Mapping existing = mMappings.get(name);
+            if (existing != null) {
+                return existing; // Mapped by another thread in the meantime.
+            }
+            mMappings.put(name, mapping);
+            if (mMappings.size() > MAX_MAPPINGS) {
+                mMappings.remove(mMappings.keySet().iterator().next());
+            }
+            mFiles.get(name); // Mark it as recently used.
+            return mapping;
+        }
+    }
+
+    /**
+     * @return The atlas directory, creating it and reading the sizes of the atlases in it on first
+     *         use, or {@code null} if it can't be created.
+     */
+    private File directory() {
+        synchronized (this) {
+            if (mDirectory != null) {
+                return mDirectory;
+            }
+        }
+        File directory = new File(mContext.getCacheDir(), "atlases");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + directory);
+            return null;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            files = new File[0];
+        }
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return modified[a] < modified[b] ? -1 : (modified[a] == modified[b] ? 0 : 1);
+            }
+        });
+        LinkedHashMap<String, Long> sizes = new LinkedHashMap<String, Long>(0, 0.75f, true);
+        long total = 0;
+        for (Integer i : order) {
+            File file = files[i];
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                file.delete(); // Left over by a write which never finished.
+                continue;
+            }
+            sizes.put(file.getName(), file.length());
+            total += file.length();
+        }
+        synchronized (this) {
+            if (mDirectory == null) {
+                mDirectory = directory;
+                mFiles = sizes;
+                mSize = total;
+            }
+            return mDirectory;
+        }
+    }
+
+    private static String name(String layout, int page) {
+        return layout + "-" + page;
+    }
+
+    /** The index of a mapped atlas. */
+    private static final class Mapping {
+        final ByteBuffer buffer;
+        final long[] ids;
+        final int[] slots;
+        final int[] widths;
+        final int[] heights;
+        final int[] configs;
+        final int[] offsets;
+        final int[] lengths;
+        /** Entries which were read since the atlas was mapped. */
+        final boolean[] served;
+
+        Mapping(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not an atlas");
+            }
+            int count = buffer.getInt(8);
+            if (count < 0 || buffer.limit() < HEADER_SIZE + count * ENTRY_SIZE) {
+                throw new IOException("Truncated atlas");
+            }
+            ids = new long[count];
+            slots = new int[count];
+            widths = new int[count];
+            heights = new int[count];
+            configs = new int[count];
+            offsets = new int[count];
+            lengths = new int[count];
+            served = new boolean[count];
+            buffer.position(HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                ids[i] = buffer.getLong();
+                slots[i] = buffer.getInt();
+                widths[i] = buffer.getInt();
+                heights[i] = buffer.getInt();
+                configs[i] = buffer.getInt();
+                offsets[i] = buffer.getInt();
+                lengths[i] = buffer.getInt();
+                if (configs[i] < 0 || configs[i] >= CONFIGS.length
+                        || offsets[i] < 0 || lengths[i] < 0 || offsets[i] + lengths[i] > buffer.limit()) {
+                    throw new IOException("Corrupt atlas entry " + i);
+                }
+            }
+        }
+
+        int find(int slot, long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (slots[i] == slot && ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** @return A view of the pixels of {@code entry} which shares the mapping. */
+        ByteBuffer pixels(int entry) {
+            ByteBuffer pixels = buffer.duplicate();
+            pixels.limit(offsets[entry] + lengths[entry]);
+            pixels.position(offsets[entry]);
+            return pixels.slice();
+        }
+    }
+
+    /** The cells of an atlas which is being assembled. */
+    private static final class Builder {
+        final int cellCount;
+        final long[] ids;
+        final int[] widths;
+        final int[] heights;
+        final Bitmap.Config[] configs;
+        final ByteBuffer[] pixels;
+        /** Cells known to hold the image which is in their slot now, rather than carried over. */
+        final boolean[] current;
+        int currentCount;
+
+        Builder(int cellCount) {
+            this.cellCount = cellCount;
+            ids = new long[cellCount];
+            widths = new int[cellCount];
+            heights = new int[cellCount];
+            configs = new Bitmap.Config[cellCount];
+            pixels = new ByteBuffer[cellCount];
+            current = new boolean[cellCount];
+        }
+
+        /** Keep {@code source}, which must not be written to afterwards, as the pixels of {@code slot}. */
+        void set(int slot, long id, int width, int height, Bitmap.Config config, ByteBuffer source,
+                 boolean isCurrent) {
+            if (slot < 0 || slot >= cellCount || current[slot] && !isCurrent) {
+                return;
+            }
+            if (isCurrent && !current[slot]) {
+                current[slot] = true;
+                currentCount++;
+            }
+            ids[slot] = id;
+            widths[slot] = width;
+            heights[slot] = height;
+            configs[slot] = config;
+            pixels[slot] = source;
+        }
+
+        /** @return The size of the atlas file in bytes. */
+        long size() {
+            long size = HEADER_SIZE + cellCount * ENTRY_SIZE;
+            for (ByteBuffer cell : pixels) {
+                size += cell.remaining();
+            }
+            return size;
+        }
+
+        boolean isComplete() {
+            return currentCount == cellCount;
+        }
+
+        ByteBuffer header() {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + cellCount * ENTRY_SIZE);
+            header.order(ByteOrder.BIG_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(cellCount);
+            int offset = header.capacity();
+            for (int slot = 0; slot < cellCount; slot++) {
+                int length = pixels[slot].remaining();
+                header.putLong(ids[slot]).putInt(slot).putInt(widths[slot]).putInt(heights[slot])
+                        .putInt(configs[slot].ordinal()).putInt(offset).putInt(length);
+                offset += length;
+            }
+            header.flip();
+            return header;
+        }
+    }
+}
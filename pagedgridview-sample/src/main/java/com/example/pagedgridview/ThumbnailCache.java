@@ -0,0 +1,100 @@
+package com.example.pagedgridview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link BitmapLruCache} of thumbnails which also indexes the size classes it holds of each
+ * image, so a miss can find another size of the same image without scanning the whole cache.
+ * <p>
+ * Thumbnails must be added through {@link #putThumbnail(ThumbnailKey, Bitmap)}, since
+ * {@link #put(Object, Object)} can't be overridden to update the index.
+ */
+public class ThumbnailCache<T> extends BitmapLruCache<ThumbnailKey<T>> {
+    /** The cached size classes of each image. Guarded by itself. */
+    private final Map<T, List<ThumbnailKey<T>>> mVariants = new HashMap<T, List<ThumbnailKey<T>>>();
+
+    /**
+     * @param pool Receives every bitmap the cache drops so its memory can be reused, or
+     *             {@code null}.
+     */
+    public ThumbnailCache(Context context, BitmapPool pool) {
+        super(context, pool);
+    }
+
+    /** Cache {@code bitmap} under {@code key} and index its size class. */
+    public void putThumbnail(ThumbnailKey<T> key, Bitmap bitmap) {
+        // Indexed first, so the key is dropped again if the put evicts the bitmap right away.
+        synchronized (mVariants) {
+            List<ThumbnailKey<T>> variants = mVariants.get(key.getId());
+            if (variants == null) {
+                variants = new ArrayList<ThumbnailKey<T>>(2);
+                mVariants.put(key.getId(), variants);
+            }
+            if (!variants.contains(key)) {
+                variants.add(key);
+            }
+        }
+        put(key, bitmap);
+    }
+
+    /**
+     * Find another size of the image of {@code key} in one pass over its size classes. A larger
+     * variant can be scaled down instead of decoding the image, a smaller one can stand in while
+     * the right size loads.
+     *
+     * @return The cached variant of the smallest size class covering {@code key}'s, otherwise the
+     *         one of the largest size class below it, or {@code null}. A covering size class may
+     *         still hold a bitmap a few pixels smaller than requested in one dimension.
+     */
+    public Bitmap getVariant(ThumbnailKey<T> key) {
+        ThumbnailKey<T> larger = null;
+        ThumbnailKey<T> smaller = null;
+        synchronized (mVariants) {
+            List<ThumbnailKey<T>> variants = mVariants.get(key.getId());
+            if (variants == null) {
+                return null;
+            }
+            for (int i = 0; i < variants.size(); i++) {
+                ThumbnailKey<T> variant = variants.get(i);
+                if (variant.equals(key)) {
+                    continue;
+                }
+                if (variant.getWidthClass() >= key.getWidthClass() && variant.getHeightClass() >= key.getHeightClass()) {
+                    if (larger == null || area(variant) < area(larger)) {
+                        larger = variant;
+                    }
+                } else if (smaller == null || area(variant) > area(smaller)) {
+                    smaller = variant;
+                }
+            }
+        }
+        if (larger != null) {
+            return get(larger);
+        }
+        return smaller != null ? get(smaller) : null;
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, ThumbnailKey<T> key, Bitmap oldValue, Bitmap newValue) {
+        super.entryRemoved(evicted, key, oldValue, newValue);
+        if (newValue != null) {
+            return; // Replaced, the size class is still cached.
+        }
+        synchronized (mVariants) {
+            List<ThumbnailKey<T>> variants = mVariants.get(key.getId());
+            if (variants != null && variants.remove(key) && variants.isEmpty()) {
+                mVariants.remove(key.getId());
+            }
+        }
+    }
+
+    private static int area(ThumbnailKey<?> key) {
+        return key.getWidthClass() * key.getHeightClass();
+    }
+}
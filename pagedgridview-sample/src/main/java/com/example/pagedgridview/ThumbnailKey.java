@@ -0,0 +1,61 @@
+package com.example.pagedgridview;
+
+/**
+ * Identifies a cached thumbnail by image id and size class, so grids with different cell sizes,
+ * like the portrait and landscape pages, each get thumbnails of their own size from one cache.
+ * <p>
+ * Sizes are rounded up to a multiple of {@link #SIZE_STEP} pixels, so views whose sizes only
+ * differ by a few pixels share their bitmaps.
+ */
+public final class ThumbnailKey<T> {
+    static final int SIZE_STEP = 32;
+
+    private final T mId;
+    private final int mWidthClass;
+    private final int mHeightClass;
+
+    public ThumbnailKey(T id, int width, int height) {
+        mId = id;
+        mWidthClass = (width + SIZE_STEP - 1) / SIZE_STEP;
+        mHeightClass = (height + SIZE_STEP - 1) / SIZE_STEP;
+    }
+
+    public T getId() {
+        return mId;
+    }
+
+    int getWidthClass() {
+        return mWidthClass;
+    }
+
+    int getHeightClass() {
+        return mHeightClass;
+    }
+
+    /** @return The size class as a file name safe string, like {@code 320x224}. */
+    String getSizeTag() {
+        return mWidthClass * SIZE_STEP + "x" + mHeightClass * SIZE_STEP;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ThumbnailKey)) {
+            return false;
+        }
+        ThumbnailKey<?> other = (ThumbnailKey<?>) o;
+        return mWidthClass == other.mWidthClass && mHeightClass == other.mHeightClass && mId.equals(other.mId);
+    }
+
+    @Override
+    public int hashCode() {
+        return (mId.hashCode() * 31 + mWidthClass) * 31 + mHeightClass;
+    }
+
+    @Override
+    public String toString() {
+        return mId + "@" + getSizeTag();
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.pagedgridview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads thumbnails into {@link ImageView}s, from memory when they are cached and otherwise through
+ * a {@link DecodeScheduler}.
+ * <p>
+ * Loads in flight are kept in a table keyed by image id. A view which asks for an image which is
+ * already being decoded, like a cell rebound after the user paged back and forth, attaches to the
+ * pending load instead of starting a second decode, and every attached view is updated when it
+ * completes. A view which is rebound to another image merely detaches; the load keeps running so
+ * its result is cached, unless its page leaves the pager before it starts. Prefetched images are
+ * loaded the same way without a view and are promoted once a view attaches to them.
+ * <p>
+ * The loader tells the {@link BitmapPool} which bitmaps are on screen so evicted bitmaps are only
+ * reused once no view displays them. A view stops displaying its bitmap when it is loaded with
+ * another one or {@link #recycle(ImageView) recycled}.
+ * <p>
+ * Thumbnails are decoded to the size of the view which asks for them, taken from its measured size
+ * or, before its first layout, from its layout parameters. Prefetches use the size of the last
+ * view seen. The caches are keyed by {@link ThumbnailKey}, the image id plus a size class, and a
+ * miss for which the memory cache holds a larger variant of the image scales that variant down
+ * rather than reading the disk.
+ * <p>
+ * Loading is progressive. A view waiting for its thumbnail shows a cached variant of the image of
+ * another size if there is one, and otherwise the MICRO_KIND thumbnail as soon as the loader read
+ * it, until the thumbnail of its own size is ready. Micro thumbnails are cached as a variant of their
+ * own size.
+ * <p>
+ * While {@link #setPaused(boolean) paused} no new decodes start and finished thumbnails are cached
+ * but not shown. They are all shown at once on resume, so a swipe animation isn't interrupted by
+ * image updates.
+ * <p>
+ * With a {@link ThumbnailAtlas} set, the thumbnails of a page are read from one mapped file per
+ * page before falling back to the {@link DiskThumbnailCache}.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class ThumbnailLoader<T> {
+    private final Context mContext;
+    private final ThumbnailCache<T> mCache;
+    private final DecodeScheduler mScheduler;
+    private final BitmapPool mPool;
+    private final DiskThumbnailCache mDiskCache;
+    private ThumbnailAtlas mAtlas;
+    private MediaStoreThumbnailPaths mThumbnailPaths;
+    private Bitmap.Config mConfig = Bitmap.Config.ARGB_8888;
+    private int mTargetWidth;
+    private int mTargetHeight;
+    /** Finished loads waiting for the pipeline to resume. Their bitmaps are retained in the pool. */
+    private final List<ImageViewLoader<T>> mPendingLoaders = new ArrayList<ImageViewLoader<T>>();
+    private final List<Bitmap> mPendingBitmaps = new ArrayList<Bitmap>();
+    private final Map<ThumbnailKey<T>, ImageViewLoader<T>> mInFlight = new HashMap<ThumbnailKey<T>, ImageViewLoader<T>>();
+    private boolean mClosed;
+
+    /**
+     * @param pool      The pool {@code cache} evicts into, or {@code null} to not reuse bitmaps.
+     * @param diskCache Where scaled thumbnails are kept across process restarts, or {@code null}.
+     */
+    public ThumbnailLoader(Context context, ThumbnailCache<T> cache, BitmapPool pool,
+                           DiskThumbnailCache diskCache, DecodeScheduler scheduler) {
+        mContext = context;
+        mCache = cache;
+        mPool = pool;
+        mDiskCache = diskCache;
+        mScheduler = scheduler;
+    }
+
+    BitmapPool getPool() {
+        return mPool;
+    }
+
+    DiskThumbnailCache getDiskCache() {
+        return mDiskCache;
+    }
+
+    /** Read and collect thumbnails of images with {@code Long} ids through {@code atlas}. */
+    public void setAtlas(ThumbnailAtlas atlas) {
+        mAtlas = atlas;
+    }
+
+    ThumbnailAtlas getAtlas() {
+        return mAtlas;
+    }
+
+    /** Decode MediaStore thumbnails from the files {@code paths} resolves for a page at once. */
+    public void setThumbnailPaths(MediaStoreThumbnailPaths paths) {
+        mThumbnailPaths = paths;
+    }
+
+    MediaStoreThumbnailPaths getThumbnailPaths() {
+        return mThumbnailPaths;
+    }
+
+    /**
+     * Set the pixel format thumbnails are decoded to. {@link Bitmap.Config#RGB_565} halves their
+     * memory for images without transparency.
+     */
+    public void setDecodeConfig(Bitmap.Config config) {
+        mConfig = config;
+    }
+
+    /** @return A file name safe key for {@code key} in the {@link DiskThumbnailCache}. */
+    static String diskKey(ThumbnailKey<?> key) {
+        Object id = key.getId();
+        if (id instanceof Long) {
+            return id + "-" + key.getSizeTag();
+        }
+        String name = id.toString();
+        String safe = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (safe.length() > 64) {
+            safe = safe.substring(safe.length() - 64);
+        }
+        // The hash tells apart names which only differ in replaced or truncated characters.
+        return safe + '-' + Integer.toHexString(name.hashCode()) + '-' + key.getSizeTag();
+    }
+
+    /**
+     * Show the thumbnail of {@code id} in {@code view}.
+     *
+     * @param position  The adapter position of the cell {@code view} is in.
+     * @param pageSize  The number of cells per pager page.
+     * @param itemCount The number of cells in the adapter.
+     */
+    @SuppressWarnings("unchecked")
+    public void load(T id, ImageView view, int position, int pageSize, int itemCount) {
+        updateTargetSize(view);
+        ThumbnailKey<T> key = new ThumbnailKey<T>(id, mTargetWidth, mTargetHeight);
+        Bitmap bitmap = mCache.get(key);
+        ImageViewLoader<T> current = ImageViewLoader.getBitmapWorkerTask(view);
+        if (current != null) {
+            if (bitmap == null && !current.isCancelled() && current.getKey().equals(key)) {
+                return; // Already waiting for this image.
+            }
+            current.removeTarget(view);
+        }
+        if (bitmap != null) {
+            show(view, bitmap);
+            return;
+        }
+        releaseDisplayed(view);
+
+        // One lookup serves both as the placeholder and, if it is larger, as the source to scale down.
+        Bitmap placeholder = mCache.getVariant(key);
+        ImageViewLoader<T> loader = mInFlight.get(key);
+        if (loader == null) {
+            loader = newLoader(key, position, pageSize, itemCount, placeholder);
+            loader.setPreview(placeholder == null);
+            mScheduler.submit(loader);
+        } else {
+            mScheduler.promote(loader);
+        }
+        loader.addTarget(view, placeholder);
+        if (placeholder != null && mPool != null) {
+            mPool.retain(placeholder);
+        }
+    }
+
+    /**
+     * Load the thumbnail of {@code id} into the cache ahead of a view asking for it, at a lower
+     * priority than visible cells.
+     *
+     * @see #load(Object, ImageView, int, int, int)
+     */
+    public void prefetch(T id, int position, int pageSize, int itemCount) {
+        if (mTargetWidth == 0) {
+            return; // The size to decode to isn't known before the first view is bound.
+        }
+        ThumbnailKey<T> key = new ThumbnailKey<T>(id, mTargetWidth, mTargetHeight);
+        if (mInFlight.containsKey(key) || mCache.get(key) != null) {
+            return;
+        }
+        mScheduler.prefetch(newLoader(key, position, pageSize, itemCount, mCache.getVariant(key)));
+    }
+
+    /** @param variant Another size of the image from the cache, or {@code null}. */
+    private ImageViewLoader<T> newLoader(ThumbnailKey<T> key, int position, int pageSize, int itemCount,
+                                         Bitmap variant) {
+        int page = position / pageSize;
+        int cellCount = Math.min(pageSize, itemCount - page * pageSize);
+        ImageViewLoader<T> loader = new ImageViewLoader<T>(this, mContext.getContentResolver(), mContext.getResources(),
+                key, page, pageSize, position - page * pageSize, cellCount, mTargetWidth, mTargetHeight, mConfig);
+        if (variant != null && variant.getWidth() >= mTargetWidth && variant.getHeight() >= mTargetHeight) {
+            if (mPool != null) {
+                // Keep the pool from reusing it if it is evicted before the loader scaled it.
+                mPool.retain(variant);
+            }
+            loader.deriveFrom(variant);
+        }
+        mInFlight.put(key, loader);
+        return loader;
+    }
+
+    private void updateTargetSize(ImageView view) {
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        int width = view.getWidth() - view.getPaddingLeft() - view.getPaddingRight();
+        if (width <= 0 && params != null) {
+            width = params.width - view.getPaddingLeft() - view.getPaddingRight();
+        }
+        int height = view.getHeight() - view.getPaddingTop() - view.getPaddingBottom();
+        if (height <= 0 && params != null) {
+            height = params.height - view.getPaddingTop() - view.getPaddingBottom();
+        }
+        if (width > 0 && height > 0) {
+            mTargetWidth = width;
+            mTargetHeight = height;
+        } else if (mTargetWidth == 0) {
+            // Neither measured nor a fixed size. Assume a cell of a two column grid.
+            mTargetWidth = mTargetHeight = mContext.getResources().getDisplayMetrics().widthPixels / 2;
+        }
+    }
+
+    /** Pause or resume decoding and delivery of thumbnails, for example while the pager scrolls. */
+    public void setPaused(boolean paused) {
+        if (paused == mScheduler.isPaused()) {
+            return;
+        }
+        mScheduler.setPaused(paused);
+        if (!paused) {
+            for (int i = 0; i < mPendingLoaders.size(); i++) {
+                mPendingLoaders.get(i).deliver(mPendingBitmaps.get(i));
+            }
+            // The targets which showed them retained them again.
+            dropPending();
+        }
+    }
+
+    /**
+     * Clear {@code view} because its cell left the grid, so the bitmap it displayed can enter the
+     * pool once it is evicted. A load the view was waiting for keeps running for the cache.
+     */
+    @SuppressWarnings("unchecked")
+    public void recycle(ImageView view) {
+        ImageViewLoader<T> current = ImageViewLoader.getBitmapWorkerTask(view);
+        if (current != null) {
+            current.removeTarget(view);
+        }
+        releaseDisplayed(view);
+        view.setImageDrawable(null);
+    }
+
+    /** @return True if the thumbnail of {@code id} is in the memory cache at the current size. */
+    public boolean isCached(T id) {
+        return mCache.get(new ThumbnailKey<T>(id, mTargetWidth, mTargetHeight)) != null;
+    }
+
+    /**
+     * Stop showing thumbnails because the views are going away. Loads which are still running are
+     * cached when they finish, since the cache may outlive this loader.
+     */
+    public void close() {
+        mClosed = true;
+        dropPending();
+    }
+
+    /** Forget the loads waiting for the pipeline to resume and release their bitmaps. */
+    private void dropPending() {
+        if (mPool != null) {
+            for (Bitmap bitmap : mPendingBitmaps) {
+                mPool.release(bitmap);
+            }
+        }
+        mPendingLoaders.clear();
+        mPendingBitmaps.clear();
+    }
+
+    void onLoadFinished(ImageViewLoader<T> loader, Bitmap bitmap) {
+        removeInFlight(loader);
+        if (loader.isCancelled() || bitmap == null) {
+            return;
+        }
+        mCache.putThumbnail(loader.getKey(), bitmap);
+        if (mClosed) {
+            return;
+        }
+        if (mScheduler.isPaused()) {
+            mPendingLoaders.add(loader);
+            mPendingBitmaps.add(bitmap);
+            if (mPool != null) {
+                // Keep the pool from reusing it if it is evicted before it is delivered.
+                mPool.retain(bitmap);
+            }
+        } else {
+            loader.deliver(bitmap);
+        }
+    }
+
+    void onPreview(ImageViewLoader<T> loader, Bitmap preview) {
+        if (loader.isCancelled()) {
+            return;
+        }
+        ThumbnailKey<T> key = new ThumbnailKey<T>(loader.getKey().getId(), preview.getWidth(), preview.getHeight());
+        if (!key.equals(loader.getKey())) {
+            mCache.putThumbnail(key, preview);
+        }
+        if (!mClosed && !mScheduler.isPaused()) {
+            loader.deliverPreview(preview);
+        }
+    }
+
+    /** Display a low resolution {@code preview} in {@code view} while it waits for {@code loader}. */
+    void showPreview(ImageView view, ImageViewLoader<T> loader, Bitmap preview) {
+        releaseDisplayed(view);
+        view.setImageDrawable(new ImageViewLoader.AsyncDrawable(mContext.getResources(), preview, loader));
+        if (mPool != null) {
+            mPool.retain(preview);
+        }
+    }
+
+    void onLoadCancelled(ImageViewLoader<T> loader) {
+        removeInFlight(loader);
+    }
+
+    /** Display {@code bitmap} in {@code view}, which no longer shows what it showed before. */
+    void show(ImageView view, Bitmap bitmap) {
+        releaseDisplayed(view);
+        ImageViewLoader.setImageBitmap(view, bitmap, mContext.getResources());
+        if (mPool != null) {
+            mPool.retain(bitmap);
+        }
+    }
+
+    private void releaseDisplayed(ImageView view) {
+        Drawable drawable = view.getDrawable();
+        // Placeholders count as displays too.
+        if (mPool != null && drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null) {
+                mPool.release(bitmap);
+            }
+        }
+    }
+
+    private void removeInFlight(ImageViewLoader<T> loader) {
+        if (mInFlight.get(loader.getKey()) == loader) {
+            mInFlight.remove(loader.getKey());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.pagedgridview;
+
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class BitmapPoolTest {
+    private BitmapPool pool;
+    private DecodeScheduler scheduler;
+    private ThumbnailLoader<Long> loader;
+
+    @Before public void setUp() {
+        pool = new BitmapPool(1024 * 1024);
+        scheduler = new DecodeScheduler();
+        loader = new ThumbnailLoader<Long>(Robolectric.application,
+                new ThumbnailCache<Long>(Robolectric.application, pool), pool, null, scheduler);
+    }
+
+    @After public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test public void evictedBitmapWaitsForItsLastDisplay() {
+        Bitmap bitmap = bitmap(8, 8);
+        pool.retain(bitmap);
+        pool.retain(bitmap);
+        pool.evicted(bitmap);
+        assertThat(pool.get(8, 8, Bitmap.Config.ARGB_8888)).isNull();
+
+        pool.release(bitmap);
+        assertThat(pool.get(8, 8, Bitmap.Config.ARGB_8888)).isNull();
+        pool.release(bitmap);
+        assertThat(pool.get(8, 8, Bitmap.Config.ARGB_8888)).isSameAs(bitmap);
+    }
+
+    @Test public void evictedBitmapEntersPoolWhenItsViewIsRecycled() {
+        ImageView view = new ImageView(Robolectric.application);
+        Bitmap bitmap = bitmap(8, 8);
+        loader.show(view, bitmap);
+        pool.evicted(bitmap);
+        assertThat(pool.get(8, 8, Bitmap.Config.ARGB_8888)).isNull();
+
+        loader.recycle(view);
+        assertThat(view.getDrawable()).isNull();
+        assertThat(pool.get(8, 8, Bitmap.Config.ARGB_8888)).isSameAs(bitmap);
+    }
+
+    @Test public void recyclingViewAfterReloadDoesNotReleaseTwice() {
+        ImageView view = new ImageView(Robolectric.application);
+        Bitmap first = bitmap(8, 8);
+        Bitmap second = bitmap(16, 16);
+        loader.show(view, first);
+        loader.show(view, second);
+        pool.retain(first); // Displayed by another view.
+        pool.evicted(first);
+
+        loader.recycle(view);
+        loader.recycle(view);
+        assertThat(pool.get(8, 8, Bitmap.Config.ARGB_8888)).isNull();
+    }
+
+    @Test public void pendingDeliveryKeepsEvictedBitmapOutOfPool() {
+        Bitmap bitmap = bitmap(8, 8);
+        loader.setPaused(true);
+        loader.onLoadFinished(newLoader(1L), bitmap);
+        pool.evicted(bitmap);
+        assertThat(pool.get(8, 8, Bitmap.Config.ARGB_8888)).isNull();
+
+        loader.setPaused(false);
+        assertThat(pool.get(8, 8, Bitmap.Config.ARGB_8888)).isSameAs(bitmap);
+    }
+
+    @Test public void closingDropsPendingDeliveries() {
+        Bitmap bitmap = bitmap(8, 8);
+        loader.setPaused(true);
+        loader.onLoadFinished(newLoader(1L), bitmap);
+        pool.evicted(bitmap);
+
+        loader.close();
+        assertThat(pool.get(8, 8, Bitmap.Config.ARGB_8888)).isSameAs(bitmap);
+    }
+
+    private ImageViewLoader<Long> newLoader(long id) {
+        return new ImageViewLoader<Long>(loader, Robolectric.application.getContentResolver(),
+                Robolectric.application.getResources(), new ThumbnailKey<Long>(id, 8, 8), 0, 1, 0, 1, 8, 8,
+                Bitmap.Config.ARGB_8888);
+    }
+
+    /** Robolectric's bitmaps are immutable and have no config unless told otherwise. */
+    private static Bitmap bitmap(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Robolectric.shadowOf(bitmap).setMutable(true);
+        Robolectric.shadowOf(bitmap).setConfig(Bitmap.Config.ARGB_8888);
+        return bitmap;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.pagedgridview;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class DecodeSchedulerTest {
+    private DecodeScheduler scheduler;
+
+    @Before public void setUp() {
+        scheduler = new DecodeScheduler();
+    }
+
+    @After public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test public void tasksHeldBackWhilePausedCanBeCancelled() throws InterruptedException {
+        scheduler.setPaused(true);
+        CountingTask task = new CountingTask(0);
+        scheduler.submit(task);
+        // Give a worker which was already waiting for a task the time to take it.
+        Thread.sleep(100);
+
+        assertThat(scheduler.cancelPage(0)).isEqualTo(1);
+        scheduler.setPaused(false);
+        assertThat(task.ran.await(100, TimeUnit.MILLISECONDS)).isFalse();
+    }
+
+    @Test public void heldBackTasksRunOnResume() throws InterruptedException {
+        scheduler.setPaused(true);
+        CountingTask task = new CountingTask(0);
+        scheduler.submit(task);
+        assertThat(task.ran.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+        scheduler.setPaused(false);
+        assertThat(task.ran.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static final class CountingTask extends DecodeScheduler.Task {
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        CountingTask(int page) {
+            super(page);
+        }
+
+        @Override
+        protected void runTask() {
+            ran.countDown();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.pagedgridview;
+
+import android.graphics.Bitmap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class ThumbnailCacheTest {
+    private ThumbnailCache<Long> cache;
+
+    @Before public void setUp() {
+        cache = new ThumbnailCache<Long>(Robolectric.application, null);
+    }
+
+    @Test public void largerVariantIsPreferred() {
+        put(1L, 64, 64);
+        Bitmap large = put(1L, 256, 256);
+        put(2L, 160, 160);
+
+        assertThat(cache.getVariant(new ThumbnailKey<Long>(1L, 128, 128))).isSameAs(large);
+    }
+
+    @Test public void largestSmallerVariantStandsIn() {
+        put(1L, 32, 32);
+        Bitmap closest = put(1L, 64, 64);
+        put(2L, 160, 160);
+
+        assertThat(cache.getVariant(new ThumbnailKey<Long>(1L, 128, 128))).isSameAs(closest);
+    }
+
+    @Test public void closestLargerVariantWins() {
+        put(1L, 512, 512);
+        Bitmap closest = put(1L, 256, 256);
+
+        assertThat(cache.getVariant(new ThumbnailKey<Long>(1L, 128, 128))).isSameAs(closest);
+    }
+
+    @Test public void removedVariantsAreUnindexed() {
+        put(1L, 256, 256);
+        cache.remove(new ThumbnailKey<Long>(1L, 256, 256));
+
+        assertThat(cache.getVariant(new ThumbnailKey<Long>(1L, 128, 128))).isNull();
+    }
+
+    private Bitmap put(long id, int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        cache.putThumbnail(new ThumbnailKey<Long>(id, width, height), bitmap);
+        return bitmap;
+    }
+}
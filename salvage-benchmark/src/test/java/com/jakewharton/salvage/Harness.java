@@ -0,0 +1,108 @@
+package com.jakewharton.salvage;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * A minimal JMH-style measurement loop. Each benchmark runs a number of untimed warmup
+ * iterations followed by timed iterations of {@code benchmark.swipes} simulated page swipes. The
+ * mean and standard deviation of swipes per second across iterations is reported along with the
+ * number of bytes allocated by the benchmark thread per swipe.
+ * <p>
+ * Results are printed and appended as tab-separated values to {@code benchmark.output} so runs of
+ * different versions can be compared.
+ */
+final class Harness {
+  /** A single simulated page swipe. */
+  interface Swipe {
+    void run(int swipe);
+  }
+
+  private static final int WARMUP = Integer.getInteger("benchmark.warmup", 5);
+  private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 10);
+  private static final int SWIPES = Integer.getInteger("benchmark.swipes", 2000);
+  private static final String OUTPUT = System.getProperty("benchmark.output");
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  static void run(String name, Swipe swipe) {
+    int swipeCount = 0;
+    for (int i = 0; i < WARMUP; i++) {
+      for (int j = 0; j < SWIPES; j++) {
+        swipe.run(swipeCount++);
+      }
+    }
+
+    double[] opsPerSecond = new double[ITERATIONS];
+    long allocated = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      long startBytes = allocatedBytes();
+      long start = System.nanoTime();
+      for (int j = 0; j < SWIPES; j++) {
+        swipe.run(swipeCount++);
+      }
+      long elapsed = System.nanoTime() - start;
+      allocated += allocatedBytes() - startBytes;
+      opsPerSecond[i] = SWIPES * NANOS_PER_SECOND / elapsed;
+    }
+
+    double mean = 0;
+    for (double ops : opsPerSecond) {
+      mean += ops;
+    }
+    mean /= ITERATIONS;
+    double variance = 0;
+    for (double ops : opsPerSecond) {
+      variance += (ops - mean) * (ops - mean);
+    }
+    double error = Math.sqrt(variance / ITERATIONS);
+    double bytesPerSwipe = (double) allocated / ((long) ITERATIONS * SWIPES);
+
+    String line = String.format(Locale.US, "%-48s %12.1f ± %9.1f swipes/s %10.1f B/swipe", name,
+        mean, error, bytesPerSwipe);
+    System.out.println(line);
+    report(String.format(Locale.US, "%s\t%.1f\t%.1f\t%.1f%n", name, mean, error, bytesPerSwipe));
+  }
+
+  /**
+   * @return The number of bytes allocated so far by the current thread or {@code 0} if the VM
+   *         does not track allocations per thread.
+   */
+  static long allocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+      if (sunBean.isThreadAllocatedMemorySupported()) {
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return 0;
+  }
+
+  private static void report(String line) {
+    if (OUTPUT == null) {
+      return;
+    }
+    Writer writer = null;
+    try {
+      writer = new FileWriter(OUTPUT, true);
+      writer.write(line);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write benchmark results to " + OUTPUT, e);
+    } finally {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  private Harness() {
+  }
+}
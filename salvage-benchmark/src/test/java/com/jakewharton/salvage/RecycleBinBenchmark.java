@@ -0,0 +1,53 @@
+package com.jakewharton.salvage;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.View;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Scrap and then reuse a page worth of cells directly against the bin, isolating its own cost
+ * from the view hierarchy.
+ */
+@RunWith(BenchmarkTestRunner.class)
+public class RecycleBinBenchmark {
+  static final int[] PAGE_SIZES = { 4, 9, 16, 30 };
+  static final int[] VIEW_TYPE_COUNTS = { 1, 4 };
+
+  final Context context = new Activity();
+
+  @Test public void scrapAndReusePage() {
+    for (int viewTypeCount : VIEW_TYPE_COUNTS) {
+      for (int pageSize : PAGE_SIZES) {
+        String name = "RecycleBin " + pageSize + " cells, " + viewTypeCount + " types";
+        Harness.run(name, scrapAndReuse(pageSize, viewTypeCount));
+      }
+    }
+  }
+
+  private Harness.Swipe scrapAndReuse(final int pageSize, final int viewTypeCount) {
+    final RecycleBin recycleBin = new RecycleBin();
+    recycleBin.setViewTypeCount(viewTypeCount);
+    recycleBin.setScrapCapacity(pageSize);
+    final View[] cells = new View[pageSize];
+    for (int i = 0; i < pageSize; i++) {
+      cells[i] = new View(context);
+    }
+    return new Harness.Swipe() {
+      @Override public void run(int swipe) {
+        int start = swipe * pageSize;
+        for (int i = 0; i < pageSize; i++) {
+          recycleBin.addScrapView(cells[i], start + i, i % viewTypeCount);
+        }
+        for (int i = 0; i < pageSize; i++) {
+          View view = recycleBin.getScrapView(start + pageSize + i, i % viewTypeCount);
+          if (view == null) {
+            view = new View(context);
+          }
+          cells[i] = view;
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,74 @@
+package com.jakewharton.salvage;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.jakewharton.salvage.RecycleBinBenchmark.VIEW_TYPE_COUNTS;
+
+@RunWith(BenchmarkTestRunner.class)
+public class RecyclingGridPagerAdapterBenchmark {
+  /** Grid sizes as rows by columns. */
+  static final int[][] GRIDS = { { 2, 2 }, { 3, 3 }, { 4, 4 }, { 6, 5 } };
+
+  final Context context = new Activity();
+
+  @Test public void forward() {
+    for (int viewTypeCount : VIEW_TYPE_COUNTS) {
+      for (int[] grid : GRIDS) {
+        Harness.run(name("forward", grid, viewTypeCount),
+            Swipes.forward(pager(grid[0], grid[1], viewTypeCount)));
+      }
+    }
+  }
+
+  @Test public void backAndForth() {
+    for (int viewTypeCount : VIEW_TYPE_COUNTS) {
+      for (int[] grid : GRIDS) {
+        Harness.run(name("back and forth", grid, viewTypeCount),
+            Swipes.backAndForth(pager(grid[0], grid[1], viewTypeCount)));
+      }
+    }
+  }
+
+  private static String name(String pattern, int[] grid, int viewTypeCount) {
+    return "RecyclingGridPagerAdapter " + pattern + ", " + grid[0] + "x" + grid[1] + ", "
+        + viewTypeCount + " types";
+  }
+
+  private SimulatedPager pager(int rows, int columns, int viewTypeCount) {
+    Context gridContext = new TestGrid.InflatingContext(context, rows, columns);
+    return new SimulatedPager(adapter(gridContext, viewTypeCount), new FrameLayout(context), 1);
+  }
+
+  /**
+   * An adapter whose cells cost nothing to bind. It is anonymous so the captured view type count
+   * is already assigned when the super constructor asks for it.
+   */
+  static RecyclingGridPagerAdapter adapter(final Context context, final int viewTypeCount) {
+    return new RecyclingGridPagerAdapter(context, 0, 0) {
+      @Override public int getViewTypeCount() {
+        return viewTypeCount;
+      }
+
+      @Override public int getItemViewType(int position) {
+        return position % viewTypeCount;
+      }
+
+      @Override public View getView(int position, View convertView, ViewGroup container) {
+        if (convertView == null) {
+          convertView = new View(context);
+        }
+        return convertView;
+      }
+
+      @Override protected int getItemCount() {
+        return Integer.MAX_VALUE / 2;
+      }
+    };
+  }
+}
@@ -0,0 +1,61 @@
+package com.jakewharton.salvage;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.jakewharton.salvage.RecycleBinBenchmark.VIEW_TYPE_COUNTS;
+
+@RunWith(BenchmarkTestRunner.class)
+public class RecyclingPagerAdapterBenchmark {
+  final Context context = new Activity();
+
+  @Test public void forward() {
+    for (int viewTypeCount : VIEW_TYPE_COUNTS) {
+      Harness.run("RecyclingPagerAdapter forward, " + viewTypeCount + " types",
+          Swipes.forward(pager(viewTypeCount)));
+    }
+  }
+
+  @Test public void backAndForth() {
+    for (int viewTypeCount : VIEW_TYPE_COUNTS) {
+      Harness.run("RecyclingPagerAdapter back and forth, " + viewTypeCount + " types",
+          Swipes.backAndForth(pager(viewTypeCount)));
+    }
+  }
+
+  private SimulatedPager pager(int viewTypeCount) {
+    return new SimulatedPager(adapter(context, viewTypeCount), new FrameLayout(context), 1);
+  }
+
+  /**
+   * An adapter whose views cost nothing to bind. It is anonymous so the captured view type count
+   * is already assigned when the super constructor asks for it.
+   */
+  static RecyclingPagerAdapter adapter(final Context context, final int viewTypeCount) {
+    return new RecyclingPagerAdapter() {
+      @Override public int getViewTypeCount() {
+        return viewTypeCount;
+      }
+
+      @Override public int getItemViewType(int position) {
+        return position % viewTypeCount;
+      }
+
+      @Override public View getView(int position, View convertView, ViewGroup container) {
+        if (convertView == null) {
+          convertView = new View(context);
+        }
+        return convertView;
+      }
+
+      @Override public int getCount() {
+        return Integer.MAX_VALUE;
+      }
+    };
+  }
+}
@@ -0,0 +1,90 @@
+package com.jakewharton.salvage;
+
+import android.support.v4.view.PagerAdapter;
+import android.view.ViewGroup;
+
+/**
+ * Drives a {@link PagerAdapter} the way {@link android.support.v4.view.ViewPager#populate} does:
+ * the new current page is created first, then pages are destroyed or created to the left and
+ * finally to the right of it. This preserves the destroy-before-create order of forward swipes
+ * and the create-before-destroy order of backward swipes without needing a measured pager.
+ * <p>
+ * Attached pages are tracked in fixed arrays so the simulation itself does not allocate.
+ */
+final class SimulatedPager {
+  private static final int NONE = -1;
+
+  private final PagerAdapter adapter;
+  private final ViewGroup container;
+  private final int offscreenPageLimit;
+  private final int[] pages;
+  private final Object[] objects;
+  private int current = NONE;
+
+  SimulatedPager(PagerAdapter adapter, ViewGroup container, int offscreenPageLimit) {
+    this.adapter = adapter;
+    this.container = container;
+    this.offscreenPageLimit = offscreenPageLimit;
+    pages = new int[offscreenPageLimit * 2 + 2];
+    objects = new Object[pages.length];
+    for (int i = 0; i < pages.length; i++) {
+      pages[i] = NONE;
+    }
+  }
+
+  int getCurrentItem() {
+    return current;
+  }
+
+  void setCurrentItem(int item) {
+    adapter.startUpdate(container);
+    if (indexOf(item) == NONE) {
+      add(item);
+    }
+    for (int page = item - 1; page >= item - offscreenPageLimit - 1 && page >= 0; page--) {
+      populate(page, page >= item - offscreenPageLimit);
+    }
+    for (int page = item + 1; page <= item + offscreenPageLimit + 1; page++) {
+      populate(page, page <= item + offscreenPageLimit);
+    }
+    // Pages further away than one step, left over from jumps, are destroyed too.
+    for (int i = 0; i < pages.length; i++) {
+      if (pages[i] != NONE && Math.abs(pages[i] - item) > offscreenPageLimit) {
+        remove(i);
+      }
+    }
+    adapter.setPrimaryItem(container, item, objects[indexOf(item)]);
+    adapter.finishUpdate(container);
+    current = item;
+  }
+
+  private void populate(int page, boolean keep) {
+    int index = indexOf(page);
+    if (keep && index == NONE) {
+      add(page);
+    } else if (!keep && index != NONE) {
+      remove(index);
+    }
+  }
+
+  private void add(int page) {
+    int index = indexOf(NONE);
+    pages[index] = page;
+    objects[index] = adapter.instantiateItem(container, page);
+  }
+
+  private void remove(int index) {
+    adapter.destroyItem(container, pages[index], objects[index]);
+    pages[index] = NONE;
+    objects[index] = null;
+  }
+
+  private int indexOf(int page) {
+    for (int i = 0; i < pages.length; i++) {
+      if (pages[i] == page) {
+        return i;
+      }
+    }
+    return NONE;
+  }
+}
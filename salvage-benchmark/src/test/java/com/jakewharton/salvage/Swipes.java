@@ -0,0 +1,34 @@
+package com.jakewharton.salvage;
+
+/** Swipe patterns shared by the adapter benchmarks. */
+final class Swipes {
+  /** Number of swipes made in one direction before turning around in {@link #backAndForth}. */
+  private static final int RUN_LENGTH = 4;
+
+  /** Keep swiping to the next page. */
+  static Harness.Swipe forward(final SimulatedPager pager) {
+    pager.setCurrentItem(0);
+    return new Harness.Swipe() {
+      @Override public void run(int swipe) {
+        pager.setCurrentItem(pager.getCurrentItem() + 1);
+      }
+    };
+  }
+
+  /** Swipe a few pages forward, then back to where we started, over and over. */
+  static Harness.Swipe backAndForth(final SimulatedPager pager) {
+    pager.setCurrentItem(RUN_LENGTH);
+    return new Harness.Swipe() {
+      @Override public void run(int swipe) {
+        if ((swipe / RUN_LENGTH) % 2 == 0) {
+          pager.setCurrentItem(pager.getCurrentItem() + 1);
+        } else {
+          pager.setCurrentItem(pager.getCurrentItem() - 1);
+        }
+      }
+    };
+  }
+
+  private Swipes() {
+  }
+}
@@ -1,147 +1,526 @@
 package com.jakewharton.salvage;
 
-import android.util.SparseArray;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.view.View;
+import java.util.Arrays;
 
 /**
- * The RecycleBin facilitates reuse of views across layouts. The RecycleBin has two levels of
- * storage: ActiveViews and ScrapViews. ActiveViews are those views which were onscreen at the
- * start of a layout. By construction, they are displaying current information. At the end of
- * layout, all views in ActiveViews are demoted to ScrapViews. ScrapViews are old views that
- * could potentially be used by the adapter to avoid allocating views unnecessarily.
+ * The RecycleBin facilitates reuse of views across layouts. Views which are removed from a layout
+ * are put into a scrap heap for their view type from which they can later be handed back to the
+ * adapter as a convert view to avoid allocating views unnecessarily.
+ * <p>
+ * Each view type has its own bounded scrap heap. When a heap is full the view which has been in
+ * scrap the longest is evicted to make room for the new one. Use
+ * {@link #setScrapCapacity(int, int)} to trade memory for fewer inflations on a per-type basis.
+ * Scrapping and reusing views never allocates once the heaps have been created.
+ * <p>
+ * A single bin may be shared by several adapters, for example pagers on different tabs which
+ * display the same cell layouts, by passing it to their constructors. View types are then a global
+ * identity: adapters attached to the same bin must only use the same view type for views which
+ * are interchangeable with each other. Position affinity is only a hint, so a view scrapped by one
+ * adapter can be handed to another as a convert view for any position.
+ * <p>
+ * The bin keeps counters of scrap hits, exact-position hits, misses, evictions and peak scrap
+ * depth for each view type. These are always on and cost an array increment per event. A
+ * {@link Listener} can additionally be notified of every event as it happens.
+ * <p>
+ * The bin also records the recent misses of each view type: the largest number of views of the
+ * type it could not supply in a row without one being scrapped in between. Every burst of
+ * requests which is fully served from scrap lowers that number by one, so it follows what the
+ * adapter currently runs short of rather than the worst it ever did. With
+ * {@link #startPrewarming(ViewFactory)} the bin uses the main thread's idle time to create views
+ * until each heap holds that many, so the next burst of demand is served from scrap instead of
+ * inflating while the user swipes. Types which never miss, like cells an adapter keeps attached
+ * on its own, are never prewarmed.
+ * <p>
+ * With {@link #setAdaptiveCapacity(boolean)} the bin sizes each heap itself. It counts the views of
+ * each type which are alive at once, handed out and not yet scrapped again, and after every window
+ * of {@value #ADAPTIVE_WINDOW} requests grows a heap straight away to the working set observed in
+ * that window. A heap is only shrunk once the working set has stayed below its capacity for
+ * {@value #ADAPTIVE_SHRINK_WINDOWS} windows in a row, so a brief lull does not cause inflation as
+ * soon as the user swipes again.
+ * <p>
+ * Adaptation only counts views as they are handed out of scrap and scrapped again. Views an
+ * adapter keeps attached outside of scrap are invisible to it, so it is only suited to adapters
+ * which scrap every view as soon as it leaves the screen, like {@link RecyclingPagerAdapter}.
+ * {@link RecyclingGridPagerAdapter} keeps the cells of cached pages attached and does not enable
+ * it; don't enable it on a bin shared with one.
  * <p>
  * This class was taken from Android's implementation of {@link android.widget.AbsListView} which
  * is copyrighted 2006 The Android Open Source Project.
  */
 public class RecycleBin {
   /**
-   * Views that were on screen at the start of layout. This array is populated at the start of
-   * layout, and at the end of layout all view in activeViews are moved to scrapViews.
-   * Views in activeViews represent a contiguous range of Views, with position of the first
-   * view store in mFirstActivePosition.
+   * Number of scrap views retained for each view type unless configured otherwise. This is enough
+   * to replace every page of a pager using the default offscreen page limit.
    */
-  private View[] activeViews = new View[0];
-  private int[] activeViewTypes = new int[0];
+  public static final int DEFAULT_SCRAP_CAPACITY = 3;
+
+  /** Longest time spent creating views in a single idle callback, in milliseconds. */
+  private static final long PREWARM_BUDGET_MS = 4;
+
+  /** Number of requests across all view types after which adaptive capacities are revised. */
+  static final int ADAPTIVE_WINDOW = 64;
+  /** Consecutive windows a heap's working set must stay below its capacity before it shrinks. */
+  static final int ADAPTIVE_SHRINK_WINDOWS = 4;
+  /** Smallest capacity an adaptive heap shrinks to. */
+  private static final int ADAPTIVE_MIN_CAPACITY = 1;
 
   /** Unsorted views that can be used by the adapter as a convert view. */
-  private SparseArray<View>[] scrapViews;
+  private ScrapHeap[] scrapHeaps = new ScrapHeap[0];
 
   private int viewTypeCount;
 
-  private SparseArray<View> currentScrapViews;
+  /** Capacity given to the scrap heaps of view types which are added later. */
+  private int defaultCapacity = DEFAULT_SCRAP_CAPACITY;
+
+  private int[] hitCounts = new int[0];
+  private int[] exactHitCounts = new int[0];
+  private int[] missCounts = new int[0];
+  private int[] evictionCounts = new int[0];
+  private int[] peakScrapCounts = new int[0];
+  /** Views requested, and of those not found in scrap, since one of the type was last scrapped. */
+  private int[] demandCounts = new int[0];
+  private int[] missRunCounts = new int[0];
+  /** Largest miss run of recent bursts, which drives prewarming. */
+  private int[] recentMissCounts = new int[0];
+  /** Views handed out and not yet scrapped again. */
+  private int[] aliveCounts = new int[0];
+
+  private boolean adaptiveCapacity;
+  private int windowRequestCount;
+  /** Largest alive count of the current window. */
+  private int[] windowPeakCounts = new int[0];
+  /** Windows in a row whose peak was below the capacity, and the largest peak among them. */
+  private int[] shrinkStreaks = new int[0];
+  private int[] shrinkStreakPeaks = new int[0];
+
+  private Listener listener;
+
+  private ViewFactory viewFactory;
+  private MessageQueue prewarmQueue;
+  private final MessageQueue.IdleHandler prewarmHandler = new MessageQueue.IdleHandler() {
+    @Override public boolean queueIdle() {
+      long deadline = SystemClock.uptimeMillis() + PREWARM_BUDGET_MS;
+      boolean created = prewarm();
+      while (created && SystemClock.uptimeMillis() < deadline) {
+        created = prewarm();
+      }
+      return true;
+    }
+  };
+
+  /** Receives a callback for every recycling event of the bin it is attached to. */
+  public interface Listener {
+    /**
+     * A scrap view was handed to the adapter as a convert view.
+     *
+     * @param exactPosition True if the view last displayed {@code position}.
+     */
+    void onScrapHit(int viewType, int position, boolean exactPosition);
+
+    /** No scrap view was available so the adapter will have to create a new view. */
+    void onScrapMiss(int viewType, int position);
+
+    /** Scrap views were discarded because their heap was full or its capacity was reduced. */
+    void onScrapEvicted(int viewType, int count);
+  }
+
+  /** Creates unbound views so they can be put into scrap ahead of demand. */
+  public interface ViewFactory {
+    /**
+     * @return A new view of {@code viewType} which has not been bound to any position, or
+     *         {@code null} if one can't be created right now.
+     */
+    View newView(int viewType);
+  }
 
+  /**
+   * Make room for views of {@code viewTypeCount} different types. Since a bin can be shared
+   * between adapters the number of types only ever grows; scrap already held for existing types
+   * is kept.
+   */
   public void setViewTypeCount(int viewTypeCount) {
     if (viewTypeCount < 1) {
       throw new IllegalArgumentException("Can't have a viewTypeCount < 1");
     }
-    //noinspection unchecked
-    SparseArray<View>[] scrapViews = new SparseArray[viewTypeCount];
-    for (int i = 0; i < viewTypeCount; i++) {
-      scrapViews[i] = new SparseArray<View>();
+    if (viewTypeCount <= this.viewTypeCount) {
+      return;
+    }
+    ScrapHeap[] scrapHeaps = new ScrapHeap[viewTypeCount];
+    System.arraycopy(this.scrapHeaps, 0, scrapHeaps, 0, this.viewTypeCount);
+    for (int i = this.viewTypeCount; i < viewTypeCount; i++) {
+      scrapHeaps[i] = new ScrapHeap(defaultCapacity);
     }
     this.viewTypeCount = viewTypeCount;
-    currentScrapViews = scrapViews[0];
-    this.scrapViews = scrapViews;
+    this.scrapHeaps = scrapHeaps;
+
+    hitCounts = Arrays.copyOf(hitCounts, viewTypeCount);
+    exactHitCounts = Arrays.copyOf(exactHitCounts, viewTypeCount);
+    missCounts = Arrays.copyOf(missCounts, viewTypeCount);
+    evictionCounts = Arrays.copyOf(evictionCounts, viewTypeCount);
+    peakScrapCounts = Arrays.copyOf(peakScrapCounts, viewTypeCount);
+    demandCounts = Arrays.copyOf(demandCounts, viewTypeCount);
+    missRunCounts = Arrays.copyOf(missRunCounts, viewTypeCount);
+    recentMissCounts = Arrays.copyOf(recentMissCounts, viewTypeCount);
+    aliveCounts = Arrays.copyOf(aliveCounts, viewTypeCount);
+    windowPeakCounts = Arrays.copyOf(windowPeakCounts, viewTypeCount);
+    shrinkStreaks = Arrays.copyOf(shrinkStreaks, viewTypeCount);
+    shrinkStreakPeaks = Arrays.copyOf(shrinkStreakPeaks, viewTypeCount);
   }
 
-  protected boolean shouldRecycleViewType(int viewType) {
-    return viewType >= 0;
+  /**
+   * Set the maximum number of scrap views retained for every view type, including types which
+   * are added later by an adapter attaching to this bin.
+   */
+  public void setScrapCapacity(int capacity) {
+    defaultCapacity = capacity;
+    for (int i = 0; i < viewTypeCount; i++) {
+      evicted(i, scrapHeaps[i].setCapacity(capacity));
+    }
   }
 
-  /** @return A view from the ScrapViews collection. These are unordered. */
-  View getScrapView(int position, int viewType) {
-    if (viewTypeCount == 1) {
-      return retrieveFromScrap(currentScrapViews, position);
-    } else if (viewType >= 0 && viewType < scrapViews.length) {
-      return retrieveFromScrap(scrapViews[viewType], position);
+  /**
+   * Raise the capacity of {@code viewType} to at least {@code capacity} without shrinking it if it
+   * was configured larger, for example by another adapter sharing this bin. Other view types,
+   * including ones added later, keep their own capacities.
+   * <p>
+   * The floor only sizes the heap as it is now. With {@link #setAdaptiveCapacity(boolean) adaptive
+   * capacity} the heap is still shrunk to the working set of its type once that has stayed below
+   * the floor for {@value #ADAPTIVE_SHRINK_WINDOWS} windows.
+   */
+  void ensureScrapCapacity(int viewType, int capacity) {
+    checkViewType(viewType);
+    ScrapHeap heap = scrapHeaps[viewType];
+    if (heap.capacity() < capacity) {
+      heap.setCapacity(capacity);
     }
-    return null;
   }
 
   /**
-   * Put a view into the ScrapViews list. These views are unordered.
-   *
-   * @param scrap The view to add
+   * Set the maximum number of scrap views retained for {@code viewType}. If more views than this
+   * are currently in scrap the oldest ones are discarded.
    */
-  void addScrapView(View scrap, int position, int viewType) {
-    if (viewTypeCount == 1) {
-      currentScrapViews.put(position, scrap);
-    } else {
-      scrapViews[viewType].put(position, scrap);
+  public void setScrapCapacity(int viewType, int capacity) {
+    checkViewType(viewType);
+    evicted(viewType, scrapHeaps[viewType].setCapacity(capacity));
+  }
+
+  /**
+   * Let the bin grow and shrink each scrap heap toward the number of views of its type which are
+   * alive at once. Explicitly configured capacities become the starting point. Disabled by
+   * default. Resizing a heap allocates, so an adaptive bin only stops allocating once the working
+   * sets have settled.
+   */
+  public void setAdaptiveCapacity(boolean enabled) {
+    adaptiveCapacity = enabled;
+    windowRequestCount = 0;
+    for (int i = 0; i < viewTypeCount; i++) {
+      windowPeakCounts[i] = aliveCounts[i];
+      shrinkStreaks[i] = 0;
+      shrinkStreakPeaks[i] = 0;
     }
+  }
 
-    scrap.setAccessibilityDelegate(null);
+  /** @return The maximum number of scrap views retained for {@code viewType}. */
+  public int getScrapCapacity(int viewType) {
+    checkViewType(viewType);
+    return scrapHeaps[viewType].capacity();
+  }
+
+  /** @return The number of views currently in scrap for {@code viewType}. */
+  public int getScrapCount(int viewType) {
+    checkViewType(viewType);
+    return scrapHeaps[viewType].size();
+  }
+
+  /** Discard every view currently in scrap. Discarded views are counted as evictions. */
+  public void clear() {
+    for (int i = 0; i < viewTypeCount; i++) {
+      ScrapHeap heap = scrapHeaps[i];
+      int count = heap.size();
+      heap.clear();
+      evicted(i, count);
+    }
+  }
+
+  /**
+   * Release scrap views in response to
+   * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}. The oldest views of each type
+   * are discarded in proportion to {@code level}, as described by {@link TrimLevels}; capacities
+   * are left alone so the heaps refill if the views are needed again. Discarded views are counted
+   * as evictions.
+   */
+  public void trimMemory(int level) {
+    for (int i = 0; i < viewTypeCount; i++) {
+      ScrapHeap heap = scrapHeaps[i];
+      evicted(i, heap.trimTo(TrimLevels.retainedCount(heap.size(), level)));
+    }
   }
 
-  /** Move all views remaining in activeViews to scrapViews. */
-  void scrapActiveViews() {
-    final View[] activeViews = this.activeViews;
-    final int[] activeViewTypes = this.activeViewTypes;
-    final boolean multipleScraps = viewTypeCount > 1;
+  /** Set a listener to be notified of every recycling event, or {@code null} to remove it. */
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
 
-    SparseArray<View> scrapViews = currentScrapViews;
-    final int count = activeViews.length;
-    for (int i = count - 1; i >= 0; i--) {
-      final View victim = activeViews[i];
-      if (victim != null) {
-        int whichScrap = activeViewTypes[i];
+  /** @return The number of times a scrap view of {@code viewType} was handed out. */
+  public int getScrapHitCount(int viewType) {
+    checkViewType(viewType);
+    return hitCounts[viewType];
+  }
 
-        activeViews[i] = null;
-        activeViewTypes[i] = -1;
+  /**
+   * @return The number of scrap hits for {@code viewType} where the view last displayed the same
+   *         position it was requested for. This is a subset of {@link #getScrapHitCount(int)}.
+   */
+  public int getExactPositionHitCount(int viewType) {
+    checkViewType(viewType);
+    return exactHitCounts[viewType];
+  }
 
-        if (!shouldRecycleViewType(whichScrap)) {
-          continue;
-        }
+  /**
+   * @return The number of times no scrap view of {@code viewType} was available and the adapter
+   *         had to create one.
+   */
+  public int getMissCount(int viewType) {
+    checkViewType(viewType);
+    return missCounts[viewType];
+  }
 
-        if (multipleScraps) {
-          scrapViews = this.scrapViews[whichScrap];
-        }
-        scrapViews.put(i, victim);
+  /** @return The number of scrap views of {@code viewType} which were discarded. */
+  public int getEvictionCount(int viewType) {
+    checkViewType(viewType);
+    return evictionCounts[viewType];
+  }
+
+  /** @return The largest number of views of {@code viewType} that were in scrap at once. */
+  public int getPeakScrapCount(int viewType) {
+    checkViewType(viewType);
+    return peakScrapCounts[viewType];
+  }
+
+  /**
+   * @return The largest number of scrap misses for {@code viewType} in a row without one of that
+   *         type being scrapped in between, lowered by one for every later burst of requests
+   *         which had no miss. This is not cleared by {@link #resetStats()} since it drives
+   *         prewarming.
+   */
+  public int getRecentMissCount(int viewType) {
+    checkViewType(viewType);
+    return recentMissCounts[viewType];
+  }
+
+  /**
+   * @return The number of views of {@code viewType} prewarming keeps in scrap: the recent miss
+   *         count, bounded by the scrap capacity.
+   */
+  public int getPrewarmTarget(int viewType) {
+    checkViewType(viewType);
+    return Math.min(recentMissCounts[viewType], scrapHeaps[viewType].capacity());
+  }
+
+  /**
+   * Create views with {@code factory} whenever the calling thread's message queue is idle until
+   * each view type has {@link #getPrewarmTarget(int)} views in scrap. Must be called on a thread
+   * with a {@link Looper}, normally the main thread. A bin only has one factory; calling this again
+   * replaces it.
+   * <p>
+   * The bin holds on to {@code factory} until {@link #stopPrewarming()} is called, which should be
+   * done when the views' context is destroyed.
+   */
+  public void startPrewarming(ViewFactory factory) {
+    if (factory == null) {
+      throw new IllegalArgumentException("factory == null");
+    }
+    viewFactory = factory;
+    if (prewarmQueue == null) {
+      prewarmQueue = Looper.myQueue();
+      prewarmQueue.addIdleHandler(prewarmHandler);
+    }
+  }
 
-        victim.setAccessibilityDelegate(null);
+  /** Stop creating views when idle and release the factory. */
+  public void stopPrewarming() {
+    if (prewarmQueue != null) {
+      prewarmQueue.removeIdleHandler(prewarmHandler);
+      prewarmQueue = null;
+    }
+    viewFactory = null;
+  }
+
+  /**
+   * Create a single view for the view type furthest below its prewarm target and put it into
+   * scrap. This is what the bin does repeatedly when the main thread is idle.
+   *
+   * @return True if a view was created.
+   */
+  public boolean prewarm() {
+    ViewFactory factory = viewFactory;
+    if (factory == null) {
+      return false;
+    }
+    int viewType = -1;
+    int largestDeficit = 0;
+    for (int i = 0; i < viewTypeCount; i++) {
+      int deficit = getPrewarmTarget(i) - scrapHeaps[i].size();
+      if (deficit > largestDeficit && shouldRecycleViewType(i)) {
+        viewType = i;
+        largestDeficit = deficit;
       }
     }
+    if (viewType == -1) {
+      return false;
+    }
+    View view = factory.newView(viewType);
+    if (view == null) {
+      return false;
+    }
+    ScrapHeap heap = scrapHeaps[viewType];
+    heap.put(view, ScrapHeap.NO_POSITION);
+    if (heap.size() > peakScrapCounts[viewType]) {
+      peakScrapCounts[viewType] = heap.size();
+    }
+    return true;
+  }
+
+  /** Reset every counter to zero. Peak scrap depth restarts from the current depth. */
+  public void resetStats() {
+    for (int i = 0; i < viewTypeCount; i++) {
+      hitCounts[i] = 0;
+      exactHitCounts[i] = 0;
+      missCounts[i] = 0;
+      evictionCounts[i] = 0;
+      peakScrapCounts[i] = scrapHeaps[i].size();
+    }
+  }
 
-    pruneScrapViews();
+  protected boolean shouldRecycleViewType(int viewType) {
+    return viewType >= 0;
   }
 
   /**
-   * Makes sure that the size of scrapViews does not exceed the size of activeViews.
-   * (This can happen if an adapter does not recycle its views).
+   * @return A view from the ScrapViews collection. A view which last displayed {@code position}
+   *         is preferred, otherwise the most recently scrapped view of the type is returned.
    */
-  private void pruneScrapViews() {
-    final int maxViews = activeViews.length;
-    final int viewTypeCount = this.viewTypeCount;
-    final SparseArray<View>[] scrapViews = this.scrapViews;
-    for (int i = 0; i < viewTypeCount; ++i) {
-      final SparseArray<View> scrapPile = scrapViews[i];
-      int size = scrapPile.size();
-      final int extras = size - maxViews;
-      size--;
-      for (int j = 0; j < extras; j++) {
-        scrapPile.removeAt(size--);
+  View getScrapView(int position, int viewType) {
+    if (viewType < 0 || viewType >= viewTypeCount) {
+      return null;
+    }
+    demandCounts[viewType]++;
+    int alive = ++aliveCounts[viewType];
+    if (alive > windowPeakCounts[viewType]) {
+      windowPeakCounts[viewType] = alive;
+    }
+    if (adaptiveCapacity && ++windowRequestCount == ADAPTIVE_WINDOW) {
+      adaptCapacities();
+    }
+
+    ScrapHeap heap = scrapHeaps[viewType];
+    View view = heap.takeExact(position);
+    boolean exact = view != null;
+    if (!exact) {
+      view = heap.takeAny();
+    }
+
+    Listener listener = this.listener;
+    if (view == null) {
+      missCounts[viewType]++;
+      int missRun = ++missRunCounts[viewType];
+      if (missRun > recentMissCounts[viewType]) {
+        recentMissCounts[viewType] = missRun;
       }
+      if (listener != null) {
+        listener.onScrapMiss(viewType, position);
+      }
+    } else {
+      hitCounts[viewType]++;
+      if (exact) {
+        exactHitCounts[viewType]++;
+      }
+      if (listener != null) {
+        listener.onScrapHit(viewType, position, exact);
+      }
+    }
+    return view;
+  }
+
+  /**
+   * Put a view into the ScrapViews list. If the scrap heap for the type is full the oldest view
+   * in it is discarded.
+   *
+   * @param scrap The view to add
+   */
+  void addScrapView(View scrap, int position, int viewType) {
+    if (!shouldRecycleViewType(viewType) || viewType >= viewTypeCount) {
+      return;
+    }
+    if (demandCounts[viewType] > 0 && missRunCounts[viewType] == 0
+        && recentMissCounts[viewType] > 0) {
+      // The burst which just ended was served from scrap alone.
+      recentMissCounts[viewType]--;
+    }
+    demandCounts[viewType] = 0;
+    missRunCounts[viewType] = 0;
+    if (aliveCounts[viewType] > 0) {
+      aliveCounts[viewType]--;
+    }
+    ScrapHeap heap = scrapHeaps[viewType];
+    if (heap.put(scrap, position) != null) {
+      evicted(viewType, 1);
     }
+    if (heap.size() > peakScrapCounts[viewType]) {
+      peakScrapCounts[viewType] = heap.size();
+    }
+
+    scrap.setAccessibilityDelegate(null);
   }
 
-  static View retrieveFromScrap(SparseArray<View> scrapViews, int position) {
-    int size = scrapViews.size();
-    if (size > 0) {
-      // See if we still have a view for this position.
-      for (int i = 0; i < size; i++) {
-        View view = scrapViews.get(i);
-        int fromPosition = scrapViews.keyAt(i);
-        if (fromPosition == position) {
-          scrapViews.remove(i);
-          return view;
+  /**
+   * Grow every heap whose working set exceeded its capacity during the window that just ended
+   * and shrink those which stayed below it for long enough.
+   */
+  private void adaptCapacities() {
+    windowRequestCount = 0;
+    for (int i = 0; i < viewTypeCount; i++) {
+      ScrapHeap heap = scrapHeaps[i];
+      int peak = windowPeakCounts[i];
+      windowPeakCounts[i] = aliveCounts[i];
+      int capacity = heap.capacity();
+      if (peak < capacity) {
+        if (peak > shrinkStreakPeaks[i]) {
+          shrinkStreakPeaks[i] = peak;
+        }
+        if (++shrinkStreaks[i] < ADAPTIVE_SHRINK_WINDOWS) {
+          continue;
+        }
+        int target = Math.max(shrinkStreakPeaks[i], ADAPTIVE_MIN_CAPACITY);
+        if (target < capacity) {
+          evicted(i, heap.setCapacity(target));
         }
+      } else if (peak > capacity) {
+        heap.setCapacity(peak);
       }
-      int index = size - 1;
-      View r = scrapViews.valueAt(index);
-      scrapViews.removeAt(index);
-      return r;
-    } else {
-      return null;
+      shrinkStreaks[i] = 0;
+      shrinkStreakPeaks[i] = 0;
+    }
+  }
+
+  private void evicted(int viewType, int count) {
+    if (count == 0) {
+      return;
+    }
+    evictionCounts[viewType] += count;
+    if (listener != null) {
+      listener.onScrapEvicted(viewType, count);
+    }
+  }
+
+  private void checkViewType(int viewType) {
+    if (viewType < 0 || viewType >= viewTypeCount) {
+      throw new IllegalArgumentException(
+          "viewType " + viewType + " is not in range [0, " + viewTypeCount + ")");
     }
   }
-}
\ No newline at end of file
+}
@@ -7,7 +7,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * Created with IntelliJ IDEA.
@@ -19,78 +19,464 @@ import java.util.Stack;
 /**
  * A {@link android.support.v4.view.PagerAdapter} which behaves like an {@link android.widget.Adapter} with view types and
  * view recycling.
+ * <p>
+ * Pages are recycled whole: a page which goes off screen keeps its cells attached and, when it is
+ * reused, each cell is rebound in place. Cells only go through the {@link RecycleBin} when a page
+ * is reused for a partial last page or when the view type of a cell slot changes.
+ * <p>
+ * Detached pages are kept in a small LRU cache which remembers what they were bound to. Returning
+ * to a page which is still in the cache re-attaches it without a single {@link #getView} call.
+ * A page which falls out of the cache keeps its cells as an unbound spare, which is rebound
+ * before another page is inflated, so swiping back and forth settles on a fixed set of pages.
+ * <p>
+ * After {@link #notifyDataSetChanged()} attached and cached pages are rebound in place before they
+ * are shown again. Adapters which return {@code true} from {@link #hasStableIds()} only have the
+ * cells whose {@link #getItemId(int) item id} changed rebound; pages whose ids are all unchanged
+ * are left untouched.
+ * <p>
+ * {@link #notifyItemChanged(int, Object)} updates a single cell. If its page is attached the cell
+ * is rebound right away through {@link #getView(int, View, ViewGroup, Object)} with a payload
+ * describing what changed; if its page is cached the cell is rebound when the page is re-attached.
+ * <p>
+ * Nothing is inflated when the adapter is created. Pages are inflated as the pager first asks for
+ * them, and the page size is read from the first page's {@link IGrid} unless it is passed to the
+ * constructor, in which case an empty adapter never inflates anything at all.
+ * <p>
+ * Adapters which can create a cell without binding it implement {@link #newView(int, ViewGroup)}.
+ * {@link #setPrewarmEnabled(boolean)} then lets the recycle bin create cells of each view type
+ * while the main thread is idle, so swiping to a page of a new view type does not inflate.
  */
 public abstract class RecyclingGridPagerAdapter extends PagerAdapter {
     static final int IGNORE_ITEM_VIEW_TYPE = AdapterView.ITEM_VIEW_TYPE_IGNORE;
-    private final int mPageSize;
+    static final long NO_ID = AdapterView.INVALID_ROW_ID;
+    /** Number of detached pages which are kept bound unless configured otherwise. */
+    public static final int DEFAULT_PAGE_CACHE_SIZE = 3;
+    private static final int NO_PAGE = -1;
+    /** Cells on each page, or {@code 0} until the first page has been inflated. */
+    private int mPageSize;
     private final RecycleBin recycleBin;
-    private Stack<View> mPageCache;
+    /** Detached pages ordered from least to most recently used. */
+    private Page[] mPageCache = new Page[DEFAULT_PAGE_CACHE_SIZE];
+    private int mPageCacheCount;
+    /** Pages which fell out of the cache, their cells still attached but no longer bound. */
+    private Page[] mSparePages = new Page[1];
+    private int mSparePageCount;
+    /** Pages currently attached to the pager. */
+    private Page[] mActivePages = new Page[DEFAULT_PAGE_CACHE_SIZE];
+    private int mActivePageCount;
+    /** Incremented by every data set change so pages can tell whether their binding is current. */
+    private int mDataVersion;
     private int mResource;
     private int mGroupId = 0;
     private final LayoutInflater mInflater;
+    /** Grid of the most recently bound page, used to create cells when prewarming. */
+    private ViewGroup mLastGrid;
+    private final RecycleBin.ViewFactory mViewFactory = new RecycleBin.ViewFactory() {
+        @Override
+        public View newView(int viewType) {
+            if (mLastGrid == null) {
+                return null;
+            }
+            return RecyclingGridPagerAdapter.this.newView(viewType, mLastGrid);
+        }
+    };
 
     public RecyclingGridPagerAdapter(Context context, int resource, int groupViewResourceId) {
         this(context, resource, groupViewResourceId, new RecycleBin());
     }
 
-    RecyclingGridPagerAdapter(Context context, int resource, int groupViewResourceId, RecycleBin recycleBin) {
+    /**
+     * Create an adapter whose pages hold {@code pageSize} cells. Supplying the page size means no
+     * page has to be inflated before the pager asks for one.
+     */
+    public RecyclingGridPagerAdapter(Context context, int resource, int groupViewResourceId,
+                                     int pageSize) {
+        this(context, resource, groupViewResourceId, pageSize, new RecycleBin());
+    }
+
+    /**
+     * Create an adapter which recycles its cells through {@code recycleBin}. Passing the same bin
+     * to several adapters lets cells scrapped by one be reused by the others.
+     *
+     * @see RecycleBin
+     */
+    public RecyclingGridPagerAdapter(Context context, int resource, int groupViewResourceId,
+                                     RecycleBin recycleBin) {
         this.recycleBin = recycleBin;
         mResource = resource;
-        mPageCache = new Stack<View>();
         mGroupId = groupViewResourceId;
 
         mInflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
 
-        mPageCache.ensureCapacity(3);
-        View view = null;
-        for (int i = 0; i < 3; i++) {
-            view = mInflater.inflate(mResource, null, false);
-            mPageCache.push(view);
+        recycleBin.setViewTypeCount(getViewTypeCount());
+    }
+
+    /**
+     * Create an adapter whose pages hold {@code pageSize} cells and which recycles its cells
+     * through {@code recycleBin}.
+     *
+     * @see #RecyclingGridPagerAdapter(Context, int, int, int)
+     * @see #RecyclingGridPagerAdapter(Context, int, int, RecycleBin)
+     */
+    public RecyclingGridPagerAdapter(Context context, int resource, int groupViewResourceId,
+                                     int pageSize, RecycleBin recycleBin) {
+        this(context, resource, groupViewResourceId, recycleBin);
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Can't have a page size < 1");
         }
+        setPageSize(pageSize);
+    }
 
-        IGrid gridLayout = (IGrid) getViewGroup(view);
-        mPageSize = gridLayout.getColumnCount() * gridLayout.getRowCount();
+    /**
+     * @return The number of cells on each page. If it was not passed to the constructor the first
+     *         page is inflated to measure it.
+     */
+    public int getPageSize() {
+        if (mPageSize == 0) {
+            // The page is kept so measuring does not cost an extra inflation.
+            mPageCache[mPageCacheCount++] = inflatePage(null);
+        }
+        return mPageSize;
+    }
 
-        recycleBin.setViewTypeCount(getViewTypeCount());
+    /**
+     * Set the page size and make room for a page's worth of cells of each of this adapter's view
+     * types. View types of other adapters sharing the bin are left alone.
+     */
+    private void setPageSize(int pageSize) {
+        mPageSize = pageSize;
+        int viewTypeCount = getViewTypeCount();
+        for (int viewType = 0; viewType < viewTypeCount; viewType++) {
+            recycleBin.ensureScrapCapacity(viewType, pageSize);
+        }
     }
 
-    private View getPageView(ViewGroup container, boolean attachToRoot) {
-        if (mPageCache.isEmpty())
-            return mInflater.inflate(mResource, container, attachToRoot);
-        else
-            return mPageCache.pop();
+    /**
+     * Pages are only ever inflated here, on the main thread while the pager asks for them. There
+     * is no pool of pages inflated ahead of time while idle; only cells are prewarmed, through
+     * {@link #setPrewarmEnabled(boolean)}.
+     */
+    private Page inflatePage(ViewGroup container) {
+        View root = mInflater.inflate(mResource, container, false);
+        if (mPageSize == 0) {
+            IGrid grid = (IGrid) getViewGroup(root);
+            setPageSize(grid.getColumnCount() * grid.getRowCount());
+        }
+        return new Page(root);
     }
 
+    /**
+     * @return The cached page which is still bound to {@code page}, or else a cached page which
+     *         is not bound to anything, or else a spare page. Otherwise a new page is inflated
+     *         until the adapter owns enough pages to fill the cache on top of the attached ones;
+     *         only then is the least recently used cached page rebound.
+     */
+    private Page takePage(ViewGroup container, int page) {
+        for (int i = mPageCacheCount - 1; i >= 0; i--) {
+            if (mPageCache[i].boundPage == page) {
+                return removeCachedPage(i);
+            }
+        }
+        for (int i = 0; i < mPageCacheCount; i++) {
+            if (mPageCache[i].boundPage == NO_PAGE) {
+                return removeCachedPage(i);
+            }
+        }
+        if (mSparePageCount > 0) {
+            Page spare = mSparePages[--mSparePageCount];
+            mSparePages[mSparePageCount] = null;
+            return spare;
+        }
+        // Until the cache is full every page which leaves the pager can stay bound.
+        if (mPageCacheCount < mPageCache.length) {
+            return inflatePage(container);
+        }
+        return removeCachedPage(0);
+    }
+
+    private Page removeCachedPage(int index) {
+        Page page = mPageCache[index];
+        System.arraycopy(mPageCache, index + 1, mPageCache, index, mPageCacheCount - index - 1);
+        mPageCache[--mPageCacheCount] = null;
+        return page;
+    }
+
+    /**
+     * Keep {@code page}, which fell out of the cache, as a spare. Its cells stay attached to be
+     * rebound in place, so the next page needed does not have to be inflated.
+     */
+    private void sparePage(Page page) {
+        page.boundPage = NO_PAGE;
+        if (mSparePageCount == mSparePages.length) {
+            mSparePages = Arrays.copyOf(mSparePages, mSparePageCount * 2);
+        }
+        mSparePages[mSparePageCount++] = page;
+    }
+
+    /** Drop a page entirely, handing its cells to the recycle bin. */
+    private void evictPage(Page page) {
+        ViewGroup grid = page.grid;
+        int count = grid.getChildCount();
+        for (int i = 0; i < count; i++) {
+            scrapCell(grid.getChildAt(i), page.firstPosition + i, page.viewTypes[i]);
+        }
+        grid.removeAllViews();
+    }
+
+    /**
+     * Set how many detached pages are kept, still bound to their data, after they leave the pager.
+     * Swiping back to one of them re-attaches it without rebinding any cell. When a page which is
+     * not cached is needed a new one is inflated until the cache is full, after which the least
+     * recently used one is rebound instead. Defaults to {@link #DEFAULT_PAGE_CACHE_SIZE}.
+     */
+    public void setPageCacheSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Can't have a page cache size < 1");
+        }
+        while (mPageCacheCount > size) {
+            evictPage(removeCachedPage(0));
+        }
+        Page[] pageCache = new Page[size];
+        System.arraycopy(mPageCache, 0, pageCache, 0, mPageCacheCount);
+        mPageCache = pageCache;
+    }
+
+    /**
+     * Release detached pages and recycled cells in response to
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}. The least recently used
+     * cached pages are dropped in proportion to {@code level}, as described by {@link TrimLevels},
+     * along with the same share of spare pages, and then the recycle bin is trimmed at the same
+     * level. The page cache size is left alone so the cache refills as the user swipes.
+     *
+     * @see RecycleBin#trimMemory(int)
+     */
+    public void trimMemory(int level) {
+        int retained = TrimLevels.retainedCount(mPageCacheCount, level);
+        while (mPageCacheCount > retained) {
+            evictPage(removeCachedPage(0));
+        }
+        int retainedSpares = TrimLevels.retainedCount(mSparePageCount, level);
+        while (mSparePageCount > retainedSpares) {
+            evictPage(mSparePages[--mSparePageCount]);
+            mSparePages[mSparePageCount] = null;
+        }
+        recycleBin.trimMemory(level);
+    }
+
+    /** Mark every page as stale so it is rebound before it is shown again. */
     @Override
     public void notifyDataSetChanged() {
-        recycleBin.scrapActiveViews();
+        mDataVersion++;
         super.notifyDataSetChanged();
     }
 
+    /**
+     * Rebinds attached pages in place after a data set change. Pages which no longer exist are
+     * reported as {@link #POSITION_NONE}; every other page keeps its position.
+     */
+    @Override
+    public int getItemPosition(Object object) {
+        Page pageHolder = (Page) object;
+        int page = pageHolder.boundPage;
+        if (page == NO_PAGE || page >= getCount()) {
+            pageHolder.boundPage = NO_PAGE;
+            return POSITION_NONE;
+        }
+        if (pageHolder.dataVersion != mDataVersion) {
+            bindPage(pageHolder, page);
+        }
+        return POSITION_UNCHANGED;
+    }
+
+    /**
+     * Set the maximum number of recycled cells of {@code viewType} which are retained while they
+     * are not attached to a page. Defaults to the number of cells on a page.
+     * <p>
+     * Cells stay attached to cached and spare pages without passing through scrap, so the bin can't
+     * see how many are alive and this adapter does not offer
+     * {@link RecycleBin#setAdaptiveCapacity(boolean) adaptive capacity}.
+     *
+     * @see RecycleBin#setScrapCapacity(int, int)
+     */
+    public void setScrapCapacity(int viewType, int capacity) {
+        recycleBin.setScrapCapacity(viewType, capacity);
+    }
+
+    /**
+     * Let the recycle bin create cells with {@link #newView(int, ViewGroup)} while the main thread
+     * is idle, up to the number of scrap misses each view type recently had. Cells of cached and
+     * spare pages never pass through scrap, so only view types which run short while rebinding
+     * pages are prewarmed. Must be called on the main thread. Disable prewarming when the pager's
+     * activity is destroyed so the bin releases the adapter.
+     *
+     * @see RecycleBin#startPrewarming(RecycleBin.ViewFactory)
+     */
+    public void setPrewarmEnabled(boolean enabled) {
+        if (enabled) {
+            recycleBin.startPrewarming(mViewFactory);
+        } else {
+            recycleBin.stopPrewarming();
+        }
+    }
+
     @Override
     final public int getCount() {
-        return (getItemCount() + mPageSize - 1) / mPageSize;
+        int itemCount = getItemCount();
+        if (itemCount == 0) {
+            return 0;
+        }
+        int pageSize = getPageSize();
+        return (itemCount + pageSize - 1) / pageSize;
     }
 
     protected abstract int getItemCount();
 
     @Override
     public final Object instantiateItem(ViewGroup container, int page) {
-        int max = Math.min(getItemCount(), (page + 1) * mPageSize);
-        View pageView = getPageView(container, false);
-        ViewGroup gridLayout = getViewGroup(pageView);
-
-        for (int position = page * mPageSize; position < max; position++) {
-            int viewType = getItemViewType(position);
-            View view = null;
-            if (viewType != IGNORE_ITEM_VIEW_TYPE) {
-                view = recycleBin.getScrapView(position, viewType);
+        Page pageHolder = takePage(container, page);
+        if (pageHolder.boundPage != page || pageHolder.dataVersion != mDataVersion) {
+            bindPage(pageHolder, page);
+        } else if (pageHolder.hasInvalidCells) {
+            bindInvalidCells(pageHolder);
+        }
+        container.addView(pageHolder.root);
+        addActivePage(pageHolder);
+        return pageHolder;
+    }
+
+    /**
+     * Rebind the cells already attached to {@code pageHolder} in place to show {@code page}. Cells
+     * whose view type changed are swapped through the recycle bin and cells beyond the end of a
+     * partial last page are scrapped. With stable ids, cells which already show the right item are
+     * not rebound at all.
+     */
+    private void bindPage(Page pageHolder, int page) {
+        ViewGroup grid = pageHolder.grid;
+        int start = page * mPageSize;
+        int count = Math.min(getItemCount() - start, mPageSize);
+        int attached = grid.getChildCount();
+        boolean stableIds = hasStableIds();
+        onBindPage(page, start, count);
+
+        for (int i = 0; i < count; i++) {
+            int position = start + i;
+            if (i >= attached) {
+                int viewType = getItemViewType(position);
+                grid.addView(getView(position, getScrapView(position, viewType), grid));
+                pageHolder.setCell(i, viewType, getBoundItemId(position));
+            } else if (!stableIds || !pageHolder.isCellCurrent(i, position)) {
+                bindCell(pageHolder, i, position, null);
+            }
+        }
+
+        if (attached > count) {
+            int[] viewTypes = pageHolder.viewTypes;
+            for (int i = count; i < attached; i++) {
+                scrapCell(grid.getChildAt(i), pageHolder.firstPosition + i, viewTypes[i]);
             }
-            view = getView(position, view, gridLayout);
-            gridLayout.addView(view);
+            grid.removeViews(count, attached - count);
+        }
+        pageHolder.firstPosition = start;
+        pageHolder.boundPage = page;
+        mLastGrid = grid;
+        pageHolder.dataVersion = mDataVersion;
+        pageHolder.clearInvalidCells();
+    }
+
+    /** Rebind only the cells of a page which were changed while it was cached. */
+    private void bindInvalidCells(Page pageHolder) {
+        int count = pageHolder.grid.getChildCount();
+        for (int i = 0; i < count; i++) {
+            if (pageHolder.invalidCells[i]) {
+                bindCell(pageHolder, i, pageHolder.firstPosition + i, null);
+            }
+        }
+        pageHolder.clearInvalidCells();
+    }
+
+    /**
+     * Rebind the cell attached at {@code slot} to show {@code position}. A cell of the wrong view
+     * type is swapped for one from the recycle bin. A cell which {@code getView} replaced with
+     * another view is recycled as well.
+     */
+    private void bindCell(Page pageHolder, int slot, int position, Object payload) {
+        ViewGroup grid = pageHolder.grid;
+        View cell = grid.getChildAt(slot);
+        int viewType = getItemViewType(position);
+        int oldViewType = pageHolder.viewTypes[slot];
+        View view;
+        if (viewType != IGNORE_ITEM_VIEW_TYPE && viewType == oldViewType) {
+            if (payload == null) {
+                view = getView(position, cell, grid);
+            } else {
+                view = getView(position, cell, grid, payload);
+            }
+            if (view != cell) {
+                scrapCell(cell, pageHolder.firstPosition + slot, oldViewType);
+            }
+        } else {
+            scrapCell(cell, pageHolder.firstPosition + slot, oldViewType);
+            view = getView(position, getScrapView(position, viewType), grid);
+        }
+        if (view != cell) {
+            grid.removeViewAt(slot);
+            grid.addView(view, slot);
+        }
+        pageHolder.setCell(slot, viewType, getBoundItemId(position));
+    }
+
+    private long getBoundItemId(int position) {
+        if (hasStableIds()) {
+            return getItemId(position);
+        }
+        return NO_ID;
+    }
+
+    /** Rebind the cell showing {@code position} in full. */
+    public void notifyItemChanged(int position) {
+        notifyItemChanged(position, null);
+    }
+
+    /**
+     * Rebind the cell showing {@code position} without touching the rest of its page. If the page
+     * is attached the cell is updated right away through
+     * {@link #getView(int, View, ViewGroup, Object)}; if it is cached the cell is rebound in full
+     * when the page is re-attached. Pages which are neither are bound from scratch anyway.
+     *
+     * @param payload Describes what changed, or {@code null} to rebind the cell in full.
+     */
+    public void notifyItemChanged(int position, Object payload) {
+        if (mPageSize == 0) {
+            return; // No page has been created yet.
+        }
+        int page = position / mPageSize;
+        int slot = position - page * mPageSize;
+        for (int i = 0; i < mActivePageCount; i++) {
+            Page pageHolder = mActivePages[i];
+            if (pageHolder.isBoundTo(page) && slot < pageHolder.grid.getChildCount()) {
+                bindCell(pageHolder, slot, position, payload);
+            }
+        }
+        for (int i = 0; i < mPageCacheCount; i++) {
+            Page pageHolder = mPageCache[i];
+            if (pageHolder.isBoundTo(page) && slot < pageHolder.grid.getChildCount()) {
+                pageHolder.invalidateCell(slot);
+            }
+        }
+    }
+
+    private View getScrapView(int position, int viewType) {
+        if (viewType == IGNORE_ITEM_VIEW_TYPE) {
+            return null;
+        }
+        return recycleBin.getScrapView(position, viewType);
+    }
+
+    private void scrapCell(View cell, int position, int viewType) {
+        onViewRecycled(cell);
+        if (viewType != IGNORE_ITEM_VIEW_TYPE) {
+            recycleBin.addScrapView(cell, position, viewType);
         }
-        container.addView(gridLayout);
-        return gridLayout;
     }
 
     private ViewGroup getViewGroup(View page) {
@@ -102,25 +488,88 @@ public abstract class RecyclingGridPagerAdapter extends PagerAdapter {
 
     @Override
     public final void destroyItem(ViewGroup container, int page, Object object) {
-        View v = (View) object;
-        ViewGroup viewGroup = getViewGroup(v);
-        int start = page * mPageSize;
-        for (int it = 0; it < viewGroup.getChildCount(); it++) {
-            int position = start + it;
-            View view = viewGroup.getChildAt(it);
-            int viewType = getItemViewType(position);
-            if (viewType != IGNORE_ITEM_VIEW_TYPE) {
-                recycleBin.addScrapView(view, position, viewType);
-            }
+        Page pageHolder = (Page) object;
+        container.removeView(pageHolder.root);
+        removeActivePage(pageHolder);
+        if (mPageCacheCount == mPageCache.length) {
+            sparePage(removeCachedPage(0));
         }
-        viewGroup.removeAllViews();
-        mPageCache.push(v);
-        container.removeView(v);
+        mPageCache[mPageCacheCount++] = pageHolder;
+        onPageDestroyed(page);
+    }
+
+    /**
+     * Called before the cells of {@code page} are bound, with the positions they will show, for
+     * example to fetch the data of the whole page at once rather than cell by cell.
+     */
+    @SuppressWarnings("UnusedParameters") // Arguments potentially used by subclasses.
+    protected void onBindPage(int page, int firstPosition, int count) {
+    }
+
+    /**
+     * Called after {@code page} has been removed from the pager, for example to cancel work which
+     * was started for its cells. The page is kept in the page cache so
+     * {@link #notifyItemChanged(int)} can still be used to have some of its cells rebound if it is
+     * shown again.
+     */
+    @SuppressWarnings("UnusedParameters") // Argument potentially used by subclasses.
+    protected void onPageDestroyed(int page) {
+    }
+
+    /**
+     * Called when {@code cell} leaves its page: because its page was dropped, by
+     * {@link #setPageCacheSize(int)} or {@link #trimMemory(int)}, because the page was reused
+     * for a partial last page, because its slot needs a cell of another view type, or because
+     * {@code getView} returned another view in its place. The cell is
+     * then put into the recycle bin or, for {@link #IGNORE_ITEM_VIEW_TYPE}, dropped. Release
+     * anything the cell holds which should not outlive its display, for example a reference count
+     * on the bitmap it shows.
+     */
+    @SuppressWarnings("UnusedParameters") // Argument potentially used by subclasses.
+    protected void onViewRecycled(View cell) {
     }
 
     @Override
     public final boolean isViewFromObject(View view, Object object) {
-        return view == object;
+        return view == ((Page) object).root;
+    }
+
+    private void addActivePage(Page pageHolder) {
+        if (mActivePageCount == mActivePages.length) {
+            mActivePages = Arrays.copyOf(mActivePages, mActivePageCount * 2);
+        }
+        mActivePages[mActivePageCount++] = pageHolder;
+    }
+
+    private void removeActivePage(Page pageHolder) {
+        for (int i = 0; i < mActivePageCount; i++) {
+            if (mActivePages[i] == pageHolder) {
+                mActivePages[i] = mActivePages[--mActivePageCount];
+                mActivePages[mActivePageCount] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the item ids are stable across changes to the underlying data. When they
+     * are, {@link #notifyDataSetChanged()} only rebinds cells whose id changed.
+     *
+     * @return True if the same id always refers to the same object.
+     */
+    public boolean hasStableIds() {
+        return false;
+    }
+
+    /**
+     * Get the row id associated with the specified position in the list. Only used when
+     * {@link #hasStableIds()} returns true.
+     *
+     * @param position The position of the item within the adapter's data set whose row id we want.
+     * @return The id of the item at the specified position.
+     */
+    public long getItemId(int position) {
+        return position;
     }
 
     /**
@@ -176,4 +625,91 @@ public abstract class RecyclingGridPagerAdapter extends PagerAdapter {
      * @return A View corresponding to the data at the specified position.
      */
     public abstract View getView(int position, View convertView, ViewGroup container);
+
+    /**
+     * Update part of a cell which already displays the item at {@code position}. Called instead of
+     * {@link #getView(int, View, ViewGroup)} for cells changed through
+     * {@link #notifyItemChanged(int, Object)} with a non-null payload. The default implementation
+     * rebinds the cell in full.
+     *
+     * @param position    The position of the item within the adapter's data set.
+     * @param convertView The cell currently showing the item. It is always of the right view type.
+     * @param container   The grid the cell is attached to.
+     * @param payload     The object passed to {@link #notifyItemChanged(int, Object)}, for example
+     *                    a marker saying only the selection state changed.
+     * @return The cell to show, normally {@code convertView} itself.
+     */
+    public View getView(int position, View convertView, ViewGroup container, Object payload) {
+        return getView(position, convertView, container);
+    }
+
+    /**
+     * Create a cell of {@code viewType} without binding it to any position. Cells created here are
+     * later handed to {@link #getView(int, View, ViewGroup)} as the convert view, so they must be
+     * set up exactly as {@code getView} sets up the cells it creates itself. The default
+     * implementation returns {@code null}, meaning cells are only created by {@code getView} and
+     * none are prewarmed.
+     *
+     * @param viewType  A view type in the range 0 to {@link #getViewTypeCount()} - 1.
+     * @param container The grid the cell will be attached to.
+     */
+    @SuppressWarnings("UnusedParameters") // Arguments potentially used by subclasses.
+    public View newView(int viewType, ViewGroup container) {
+        return null;
+    }
+
+    /** A page view and the view types of the cells which stay attached to its grid. */
+    private final class Page {
+        final View root;
+        final ViewGroup grid;
+        final int[] viewTypes = new int[mPageSize];
+        /** Position shown by the first cell, used as the scrap affinity of evicted cells. */
+        int firstPosition;
+        /** Item id shown by each cell when the adapter has stable ids. */
+        final long[] itemIds = new long[mPageSize];
+        /** Page index the cells are currently bound to, or {@link #NO_PAGE} if they are stale. */
+        int boundPage = NO_PAGE;
+        /** Value of {@link #mDataVersion} when the cells were last bound. */
+        int dataVersion;
+        /** Cells changed through {@link #notifyItemChanged} while the page was cached. */
+        final boolean[] invalidCells = new boolean[mPageSize];
+        boolean hasInvalidCells;
+
+        Page(View root) {
+            this.root = root;
+            this.grid = getViewGroup(root);
+            Arrays.fill(viewTypes, IGNORE_ITEM_VIEW_TYPE);
+        }
+
+        boolean isBoundTo(int page) {
+            return boundPage == page && dataVersion == mDataVersion;
+        }
+
+        /** @return True if the cell at {@code slot} already shows the item at {@code position}. */
+        boolean isCellCurrent(int slot, int position) {
+            int viewType = viewTypes[slot];
+            return !invalidCells[slot]
+                    && viewType != IGNORE_ITEM_VIEW_TYPE
+                    && viewType == getItemViewType(position)
+                    && itemIds[slot] == getItemId(position);
+        }
+
+        void setCell(int slot, int viewType, long itemId) {
+            viewTypes[slot] = viewType;
+            itemIds[slot] = itemId;
+            invalidCells[slot] = false;
+        }
+
+        void invalidateCell(int slot) {
+            invalidCells[slot] = true;
+            hasInvalidCells = true;
+        }
+
+        void clearInvalidCells() {
+            if (hasInvalidCells) {
+                Arrays.fill(invalidCells, false);
+                hasInvalidCells = false;
+            }
+        }
+    }
 }
@@ -4,31 +4,116 @@ import android.support.v4.view.PagerAdapter;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
+import java.util.Arrays;
 
 /**
  * A {@link PagerAdapter} which behaves like an {@link android.widget.Adapter} with view types and
  * view recycling.
+ * <p>
+ * By default {@link #notifyDataSetChanged()} leaves attached pages alone, as {@link PagerAdapter}
+ * does. Adapters which return {@code true} from {@link #hasStableIds()} instead keep pages whose
+ * item is still present, moving them if the item's position changed, and only recreate pages whose
+ * item was removed.
+ * <p>
+ * {@link #notifyItemChanged(int, Object)} updates the single attached page showing an item in
+ * place through {@link #getView(int, View, ViewGroup, Object)}.
+ * <p>
+ * Adapters which can create a page without binding it implement
+ * {@link #newView(int, ViewGroup)}. {@link #setPrewarmEnabled(boolean)} then lets the recycle bin
+ * create pages of each view type while the main thread is idle.
  */
 public abstract class RecyclingPagerAdapter extends PagerAdapter {
   static final int IGNORE_ITEM_VIEW_TYPE = AdapterView.ITEM_VIEW_TYPE_IGNORE;
+  private static final int INITIAL_ACTIVE_CAPACITY = 4;
 
   private final RecycleBin recycleBin;
 
+  /**
+   * Views currently attached to the pager along with the position, view type and item id they were
+   * bound to, and whether they must be recreated. The arrays only grow, so tracking views does not
+   * allocate in steady state.
+   */
+  private View[] activeViews = new View[INITIAL_ACTIVE_CAPACITY];
+  private int[] activePositions = new int[INITIAL_ACTIVE_CAPACITY];
+  private int[] activeViewTypes = new int[INITIAL_ACTIVE_CAPACITY];
+  private long[] activeItemIds = new long[INITIAL_ACTIVE_CAPACITY];
+  private boolean[] activeStale = new boolean[INITIAL_ACTIVE_CAPACITY];
+  private int activeCount;
+
+  /** Container of the most recently instantiated page, used to create pages when prewarming. */
+  private ViewGroup lastContainer;
+  private final RecycleBin.ViewFactory viewFactory = new RecycleBin.ViewFactory() {
+    @Override public View newView(int viewType) {
+      if (lastContainer == null) {
+        return null;
+      }
+      return RecyclingPagerAdapter.this.newView(viewType, lastContainer);
+    }
+  };
+
   public RecyclingPagerAdapter() {
     this(new RecycleBin());
   }
 
-  RecyclingPagerAdapter(RecycleBin recycleBin) {
+  /**
+   * Create an adapter which recycles its views through {@code recycleBin}. Passing the same bin to
+   * several adapters lets views scrapped by one be reused by the others.
+   *
+   * @see RecycleBin
+   */
+  public RecyclingPagerAdapter(RecycleBin recycleBin) {
     this.recycleBin = recycleBin;
     recycleBin.setViewTypeCount(getViewTypeCount());
   }
 
-  @Override public void notifyDataSetChanged() {
-    recycleBin.scrapActiveViews();
-    super.notifyDataSetChanged();
+  /**
+   * Set the maximum number of recycled views of {@code viewType} which are retained while they
+   * are not attached to the pager.
+   *
+   * @see RecycleBin#setScrapCapacity(int, int)
+   */
+  public void setScrapCapacity(int viewType, int capacity) {
+    recycleBin.setScrapCapacity(viewType, capacity);
+  }
+
+  /**
+   * Let the recycle bin size the scrap of each view type to the number of its views alive at
+   * once instead of using a fixed capacity.
+   *
+   * @see RecycleBin#setAdaptiveCapacity(boolean)
+   */
+  public void setAdaptiveScrapCapacity(boolean enabled) {
+    recycleBin.setAdaptiveCapacity(enabled);
+  }
+
+  /**
+   * Let the recycle bin create pages with {@link #newView(int, ViewGroup)} while the main thread
+   * is idle, up to the number of scrap misses each view type recently had. Must be called on the
+   * main thread. Disable prewarming when the pager's activity is destroyed so the bin releases the
+   * adapter.
+   *
+   * @see RecycleBin#startPrewarming(RecycleBin.ViewFactory)
+   */
+  public void setPrewarmEnabled(boolean enabled) {
+    if (enabled) {
+      recycleBin.startPrewarming(viewFactory);
+    } else {
+      recycleBin.stopPrewarming();
+    }
+  }
+
+  /**
+   * Release recycled views in response to
+   * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+   *
+   * @see RecycleBin#trimMemory(int)
+   */
+  public void trimMemory(int level) {
+    recycleBin.trimMemory(level);
   }
 
   @Override public final Object instantiateItem(ViewGroup container, int position) {
+    lastContainer = container;
     int viewType = getItemViewType(position);
     View view = null;
     if (viewType != IGNORE_ITEM_VIEW_TYPE) {
@@ -36,13 +121,23 @@ public abstract class RecyclingPagerAdapter extends PagerAdapter {
     }
     view = getView(position, view, container);
     container.addView(view);
+    addActiveView(view, position, viewType);
     return view;
   }
 
   @Override public final void destroyItem(ViewGroup container, int position, Object object) {
     View view = (View) object;
     container.removeView(view);
-    int viewType = getItemViewType(position);
+    // The data may have changed since the view was bound so prefer what was recorded back then.
+    int viewType;
+    int index = indexOfActiveView(view);
+    if (index >= 0) {
+      position = activePositions[index];
+      viewType = activeViewTypes[index];
+      removeActiveView(index);
+    } else {
+      viewType = getItemViewType(position);
+    }
     if (viewType != IGNORE_ITEM_VIEW_TYPE) {
       recycleBin.addScrapView(view, position, viewType);
     }
@@ -52,6 +147,156 @@ public abstract class RecyclingPagerAdapter extends PagerAdapter {
     return view == object;
   }
 
+  /**
+   * Without stable ids every page keeps its position, unless {@link #notifyItemChanged} could not
+   * update it in place. With stable ids a page is kept as long as its item is still in the data
+   * set, and moved along with it if its position changed.
+   */
+  @Override public int getItemPosition(Object object) {
+    int index = indexOfActiveView((View) object);
+    if (!hasStableIds()) {
+      return index >= 0 && activeStale[index] ? POSITION_NONE : POSITION_UNCHANGED;
+    }
+    if (index < 0 || activeStale[index]) {
+      return POSITION_NONE;
+    }
+    int oldPosition = activePositions[index];
+    int position = findItemPosition(activeItemIds[index], oldPosition);
+    if (position == POSITION_NONE || getItemViewType(position) != activeViewTypes[index]) {
+      return POSITION_NONE;
+    }
+    activePositions[index] = position;
+    if (position == oldPosition) {
+      return POSITION_UNCHANGED;
+    }
+    return position;
+  }
+
+  /** Rebind the page showing {@code position} in full, if it is attached. */
+  public void notifyItemChanged(int position) {
+    notifyItemChanged(position, null);
+  }
+
+  /**
+   * Rebind the page showing {@code position} in place, if it is attached, without touching any
+   * other page. {@link #getView} must rebind the convert view in place here: the pager holds on to
+   * the attached view, so another view can't be swapped in. If a different view is returned anyway
+   * it is put into the recycle bin and the page is recreated through
+   * {@link #notifyDataSetChanged()}.
+   *
+   * @param payload Describes what changed, or {@code null} to rebind the page in full.
+   */
+  public void notifyItemChanged(int position, Object payload) {
+    for (int i = 0; i < activeCount; i++) {
+      if (activePositions[i] != position) {
+        continue;
+      }
+      View view = activeViews[i];
+      int viewType = activeViewTypes[i];
+      View bound;
+      if (viewType == IGNORE_ITEM_VIEW_TYPE || viewType != getItemViewType(position)) {
+        bound = null;
+      } else if (payload == null) {
+        bound = getView(position, view, (ViewGroup) view.getParent());
+      } else {
+        bound = getView(position, view, (ViewGroup) view.getParent(), payload);
+      }
+      if (bound == view) {
+        if (hasStableIds()) {
+          activeItemIds[i] = getItemId(position);
+        }
+      } else {
+        if (bound != null && viewType != IGNORE_ITEM_VIEW_TYPE) {
+          recycleBin.addScrapView(bound, position, viewType);
+        }
+        // The page can't be updated in place.
+        activeStale[i] = true;
+        notifyDataSetChanged();
+      }
+      return;
+    }
+  }
+
+  /**
+   * Indicates whether the item ids are stable across changes to the underlying data. When they
+   * are, {@link #notifyDataSetChanged()} only recreates pages whose item was removed.
+   *
+   * @return True if the same id always refers to the same object.
+   */
+  public boolean hasStableIds() {
+    return false;
+  }
+
+  /**
+   * Get the row id associated with the specified position in the list. Only used when
+   * {@link #hasStableIds()} returns true.
+   *
+   * @param position The position of the item within the adapter's data set whose row id we want.
+   * @return The id of the item at the specified position.
+   */
+  public long getItemId(int position) {
+    return position;
+  }
+
+  /**
+   * Search for the item with {@code itemId} starting at {@code hint} and moving outwards, since
+   * items rarely move far.
+   *
+   * @return The item's position, or {@link #POSITION_NONE} if it is no longer present.
+   */
+  private int findItemPosition(long itemId, int hint) {
+    int count = getCount();
+    for (int distance = 0; hint - distance >= 0 || hint + distance < count; distance++) {
+      int after = hint + distance;
+      if (after < count && getItemId(after) == itemId) {
+        return after;
+      }
+      int before = hint - distance;
+      if (distance > 0 && before >= 0 && before < count && getItemId(before) == itemId) {
+        return before;
+      }
+    }
+    return POSITION_NONE;
+  }
+
+  private void addActiveView(View view, int position, int viewType) {
+    if (activeCount == activeViews.length) {
+      int capacity = activeCount * 2;
+      activeViews = Arrays.copyOf(activeViews, capacity);
+      activePositions = Arrays.copyOf(activePositions, capacity);
+      activeViewTypes = Arrays.copyOf(activeViewTypes, capacity);
+      activeItemIds = Arrays.copyOf(activeItemIds, capacity);
+      activeStale = Arrays.copyOf(activeStale, capacity);
+    }
+    int index = activeCount++;
+    activeViews[index] = view;
+    activePositions[index] = position;
+    activeViewTypes[index] = viewType;
+    activeStale[index] = false;
+    if (hasStableIds()) {
+      activeItemIds[index] = getItemId(position);
+    }
+  }
+
+  private int indexOfActiveView(View view) {
+    for (int i = 0; i < activeCount; i++) {
+      if (activeViews[i] == view) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void removeActiveView(int index) {
+    int last = --activeCount;
+    activeViews[index] = activeViews[last];
+    activePositions[index] = activePositions[last];
+    activeViewTypes[index] = activeViewTypes[last];
+    activeItemIds[index] = activeItemIds[last];
+    activeStale[index] = activeStale[last];
+    activeViews[last] = null;
+  }
+
   /**
    * <p>
    * Returns the number of types of Views that will be created by
@@ -105,4 +350,37 @@ public abstract class RecyclingPagerAdapter extends PagerAdapter {
    * @return A View corresponding to the data at the specified position.
    */
   public abstract View getView(int position, View convertView, ViewGroup container);
+
+  /**
+   * Create a page of {@code viewType} without binding it to any position. Pages created here are
+   * later handed to {@link #getView(int, View, ViewGroup)} as the convert view, so they must be
+   * set up exactly as {@code getView} sets up the pages it creates itself. The default
+   * implementation returns {@code null}, meaning pages are only created by {@code getView} and
+   * none are prewarmed.
+   *
+   * @param viewType A view type in the range 0 to {@link #getViewTypeCount()} - 1.
+   * @param container The pager the page will be attached to.
+   */
+  @SuppressWarnings("UnusedParameters") // Arguments potentially used by subclasses.
+  public View newView(int viewType, ViewGroup container) {
+    return null;
+  }
+
+  /**
+   * Update part of a page which already displays the item at {@code position}. Called instead of
+   * {@link #getView(int, View, ViewGroup)} for pages changed through
+   * {@link #notifyItemChanged(int, Object)} with a non-null payload. The default implementation
+   * rebinds the page in full.
+   *
+   * @param position The position of the item within the adapter's data set.
+   * @param convertView The page currently showing the item. It is always of the right view type.
+   * @param container The pager the page is attached to.
+   * @param payload The object passed to {@link #notifyItemChanged(int, Object)}, for example a
+   *        marker saying only the selection state changed.
+   * @return The page to show, which must be {@code convertView}. Returning anything else recycles
+   *         the returned view and recreates the page.
+   */
+  public View getView(int position, View convertView, ViewGroup container, Object payload) {
+    return getView(position, convertView, container);
+  }
 }
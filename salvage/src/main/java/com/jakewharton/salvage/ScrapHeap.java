@@ -0,0 +1,261 @@
+package com.jakewharton.salvage;
+
+import android.view.View;
+import java.util.Arrays;
+
+/**
+ * A bounded pile of scrap views for a single view type. Views are kept in insertion order so that
+ * when the pile is full the view which has been sitting in scrap the longest is evicted first.
+ * <p>
+ * Storage is a set of parallel arrays indexed by slot which are only reallocated when the
+ * capacity changes. An open-addressed table maps each position to the slot holding the view
+ * which last displayed it so that same-position lookups, like every other operation, run in
+ * constant time. Adding and taking views never allocates.
+ */
+final class ScrapHeap {
+  private static final int NONE = -1;
+  /** Position stored for views which are no longer indexed because a newer view took it over. */
+  static final int NO_POSITION = Integer.MIN_VALUE;
+
+  private View[] views;
+  private int[] positions;
+  /** Insertion order over the used slots. {@link #head} is the oldest view. */
+  private int[] next;
+  private int[] prev;
+  private int head = NONE;
+  private int tail = NONE;
+  /** Singly-linked (through {@link #next}) list of unused slots. */
+  private int free = NONE;
+  private int size;
+  private int capacity = NONE;
+
+  /** Linear-probing table of slot indices keyed by {@code positions[slot]}. */
+  private int[] index;
+  private int indexMask;
+
+  ScrapHeap(int capacity) {
+    setCapacity(capacity);
+  }
+
+  int size() {
+    return size;
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Change the number of views this heap will retain, evicting the oldest views if it currently
+   * holds more than {@code capacity}.
+   *
+   * @return The number of views which were evicted.
+   */
+  int setCapacity(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Can't have a capacity < 0");
+    }
+    if (capacity == this.capacity) {
+      return 0;
+    }
+    int evicted = 0;
+    while (size > capacity) {
+      removeSlot(head);
+      evicted++;
+    }
+
+    View[] oldViews = views;
+    int[] oldPositions = positions;
+    int[] oldNext = next;
+    int oldHead = head;
+
+    views = new View[capacity];
+    positions = new int[capacity];
+    next = new int[capacity];
+    prev = new int[capacity];
+    // Keep the table at most half full so probe sequences stay short.
+    int indexSize = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+    index = new int[indexSize];
+    indexMask = indexSize - 1;
+    Arrays.fill(index, NONE);
+    this.capacity = capacity;
+    head = NONE;
+    tail = NONE;
+    size = 0;
+    free = NONE;
+    for (int i = capacity - 1; i >= 0; i--) {
+      next[i] = free;
+      free = i;
+    }
+
+    // Re-insert the survivors oldest first so their relative order is preserved.
+    for (int slot = oldHead; slot != NONE; slot = oldNext[slot]) {
+      append(oldViews[slot], oldPositions[slot]);
+    }
+    return evicted;
+  }
+
+  /**
+   * Add {@code view}, which last displayed {@code position}, to the heap.
+   *
+   * @return The view which was evicted to make room, or {@code null} if nothing was evicted. When
+   *         the capacity is zero this is {@code view} itself.
+   */
+  View put(View view, int position) {
+    if (capacity == 0) {
+      return view;
+    }
+    View evicted = null;
+    if (size == capacity) {
+      evicted = views[head];
+      removeSlot(head);
+    }
+    append(view, position);
+    return evicted;
+  }
+
+  /**
+   * Remove and return the view which last displayed {@code position}, or {@code null} if no view
+   * in the heap did.
+   */
+  View takeExact(int position) {
+    if (size == 0 || position == NO_POSITION) {
+      return null;
+    }
+    int slot = find(position);
+    if (slot == NONE) {
+      return null;
+    }
+    View view = views[slot];
+    removeSlot(slot);
+    return view;
+  }
+
+  /** Remove and return the most recently added view, or {@code null} if the heap is empty. */
+  View takeAny() {
+    if (size == 0) {
+      return null;
+    }
+    View view = views[tail];
+    removeSlot(tail);
+    return view;
+  }
+
+  void clear() {
+    while (size > 0) {
+      removeSlot(head);
+    }
+  }
+
+  /**
+   * Evict the oldest views until at most {@code size} remain. The capacity is left unchanged.
+   *
+   * @return The number of views which were evicted.
+   */
+  int trimTo(int size) {
+    int evicted = 0;
+    while (this.size > size) {
+      removeSlot(head);
+      evicted++;
+    }
+    return evicted;
+  }
+
+  private void append(View view, int position) {
+    int slot = free;
+    free = next[slot];
+
+    if (position != NO_POSITION) {
+      int existing = find(position);
+      if (existing != NONE) {
+        // Only the newest view for a position keeps its affinity.
+        unindex(existing);
+        positions[existing] = NO_POSITION;
+      }
+    }
+
+    views[slot] = view;
+    positions[slot] = position;
+    if (position != NO_POSITION) {
+      int i = hash(position);
+      while (index[i] != NONE) {
+        i = (i + 1) & indexMask;
+      }
+      index[i] = slot;
+    }
+    next[slot] = NONE;
+    prev[slot] = tail;
+    if (tail == NONE) {
+      head = slot;
+    } else {
+      next[tail] = slot;
+    }
+    tail = slot;
+    size++;
+  }
+
+  private void removeSlot(int slot) {
+    if (positions[slot] != NO_POSITION) {
+      unindex(slot);
+    }
+
+    int before = prev[slot];
+    int after = next[slot];
+    if (before == NONE) {
+      head = after;
+    } else {
+      next[before] = after;
+    }
+    if (after == NONE) {
+      tail = before;
+    } else {
+      prev[after] = before;
+    }
+
+    views[slot] = null;
+    next[slot] = free;
+    free = slot;
+    size--;
+  }
+
+  private int hash(int position) {
+    int h = position * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & indexMask;
+  }
+
+  /** @return The slot holding the view which last displayed {@code position}, or {@code -1}. */
+  private int find(int position) {
+    int[] index = this.index;
+    for (int i = hash(position); index[i] != NONE; i = (i + 1) & indexMask) {
+      if (positions[index[i]] == position) {
+        return index[i];
+      }
+    }
+    return NONE;
+  }
+
+  /** Remove {@code slot} from the index, shifting later entries back to close the gap. */
+  private void unindex(int slot) {
+    int[] index = this.index;
+    int mask = indexMask;
+    int hole = hash(positions[slot]);
+    while (index[hole] != slot) {
+      hole = (hole + 1) & mask;
+    }
+    for (int i = (hole + 1) & mask; index[i] != NONE; i = (i + 1) & mask) {
+      int home = hash(positions[index[i]]);
+      // Move the entry into the hole unless its home lies cyclically within (hole, i].
+      boolean homeBetween;
+      if (hole <= i) {
+        homeBetween = hole < home && home <= i;
+      } else {
+        homeBetween = hole < home || home <= i;
+      }
+      if (!homeBetween) {
+        index[hole] = index[i];
+        hole = i;
+      }
+    }
+    index[hole] = NONE;
+  }
+}
@@ -0,0 +1,59 @@
+package com.jakewharton.salvage;
+
+import android.content.ComponentCallbacks2;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE;
+
+/**
+ * Maps the levels passed to {@link android.content.ComponentCallbacks2#onTrimMemory(int)} to how
+ * much of a cache should survive them. Every {@code trimMemory} method in this library uses the
+ * same mapping so an app can forward the level to all of them and have them shrink together:
+ * <ul>
+ * <li>{@code RUNNING_MODERATE}: keep three quarters.</li>
+ * <li>{@code RUNNING_LOW}: keep half.</li>
+ * <li>{@code RUNNING_CRITICAL} and {@code UI_HIDDEN}: keep a quarter.</li>
+ * <li>{@code BACKGROUND} and above: release everything, the process is now a candidate to be
+ * killed and the smaller it is the longer it survives.</li>
+ * </ul>
+ * The levels are compile-time constants, so the mapping also works below API 14 where
+ * {@code onTrimMemory} is never called. Forward
+ * {@link android.content.ComponentCallbacks#onLowMemory()} there as {@link #TRIM_MEMORY_COMPLETE}.
+ */
+public final class TrimLevels {
+  /**
+   * {@link android.content.ComponentCallbacks2#TRIM_MEMORY_COMPLETE}, the level to pass on from
+   * {@code onLowMemory()}. Releases everything.
+   */
+  public static final int TRIM_MEMORY_COMPLETE = ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+
+  /**
+   * @return The fraction, between 0 and 1, of a cache's current contents which should be kept
+   *         for the trim {@code level}.
+   */
+  public static float retainedFraction(int level) {
+    if (level >= TRIM_MEMORY_BACKGROUND) {
+      return 0f;
+    }
+    if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+      return 0.25f;
+    }
+    if (level >= TRIM_MEMORY_RUNNING_LOW) {
+      return 0.5f;
+    }
+    if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+      return 0.75f;
+    }
+    return 1f;
+  }
+
+  /** @return How many of {@code count} entries should be kept for the trim {@code level}. */
+  public static int retainedCount(int count, int level) {
+    return (int) (count * retainedFraction(level));
+  }
+
+  private TrimLevels() {
+  }
+}
@@ -0,0 +1,283 @@
+package com.jakewharton.salvage;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.view.View;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+@RunWith(SalvageTestRunner.class)
+public class RecycleBinTest {
+  final Context context = new Activity();
+  RecycleBin recycleBin;
+
+  @Before public void setUp() {
+    recycleBin = new RecycleBin();
+    recycleBin.setViewTypeCount(2);
+  }
+
+  @Test public void defaultCapacityIsApplied() {
+    assertThat(recycleBin.getScrapCapacity(0)).isEqualTo(RecycleBin.DEFAULT_SCRAP_CAPACITY);
+    assertThat(recycleBin.getScrapCapacity(1)).isEqualTo(RecycleBin.DEFAULT_SCRAP_CAPACITY);
+  }
+
+  @Test public void oldestViewIsEvictedWhenFull() {
+    recycleBin.setScrapCapacity(0, 2);
+    View first = new View(context);
+    View second = new View(context);
+    View third = new View(context);
+
+    recycleBin.addScrapView(first, 0, 0);
+    recycleBin.addScrapView(second, 1, 0);
+    recycleBin.addScrapView(third, 2, 0);
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(2);
+
+    assertThat(recycleBin.getScrapView(0, 0)).isNotSameAs(first);
+    assertThat(recycleBin.getScrapView(0, 0)).isNotSameAs(first);
+    assertThat(recycleBin.getScrapView(0, 0)).isNull();
+  }
+
+  @Test public void capacityIsPerViewType() {
+    recycleBin.setScrapCapacity(0, 1);
+    recycleBin.setScrapCapacity(1, 3);
+
+    for (int i = 0; i < 5; i++) {
+      recycleBin.addScrapView(new View(context), i, 0);
+      recycleBin.addScrapView(new View(context), i, 1);
+    }
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(1);
+    assertThat(recycleBin.getScrapCount(1)).isEqualTo(3);
+  }
+
+  @Test public void shrinkingCapacityKeepsNewestViews() {
+    View first = new View(context);
+    View second = new View(context);
+    View third = new View(context);
+    recycleBin.addScrapView(first, 0, 0);
+    recycleBin.addScrapView(second, 1, 0);
+    recycleBin.addScrapView(third, 2, 0);
+
+    recycleBin.setScrapCapacity(0, 1);
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(1);
+    assertThat(recycleBin.getScrapView(5, 0)).isSameAs(third);
+  }
+
+  @Test public void samePositionIsPreferred() {
+    View first = new View(context);
+    View second = new View(context);
+    recycleBin.addScrapView(first, 7, 0);
+    recycleBin.addScrapView(second, 8, 0);
+
+    assertThat(recycleBin.getScrapView(7, 0)).isSameAs(first);
+    assertThat(recycleBin.getScrapView(7, 0)).isSameAs(second);
+  }
+
+  @Test public void newestViewKeepsPositionAffinity() {
+    View first = new View(context);
+    View second = new View(context);
+    View other = new View(context);
+    recycleBin.addScrapView(first, 4, 0);
+    recycleBin.addScrapView(second, 4, 0);
+    recycleBin.addScrapView(other, 9, 0);
+
+    assertThat(recycleBin.getScrapView(4, 0)).isSameAs(second);
+    assertThat(recycleBin.getScrapView(4, 0)).isSameAs(other);
+    assertThat(recycleBin.getScrapView(4, 0)).isSameAs(first);
+  }
+
+  @Test public void zeroCapacityRetainsNothing() {
+    recycleBin.setScrapCapacity(0, 0);
+    recycleBin.addScrapView(new View(context), 0, 0);
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(0);
+    assertThat(recycleBin.getScrapView(0, 0)).isNull();
+  }
+
+  @Test public void growingViewTypeCountKeepsScrap() {
+    View view = new View(context);
+    recycleBin.setScrapCapacity(0, 4);
+    recycleBin.addScrapView(view, 0, 0);
+
+    recycleBin.setViewTypeCount(3);
+    assertThat(recycleBin.getScrapCapacity(0)).isEqualTo(4);
+    assertThat(recycleBin.getScrapCapacity(2)).isEqualTo(RecycleBin.DEFAULT_SCRAP_CAPACITY);
+    assertThat(recycleBin.getScrapView(0, 0)).isSameAs(view);
+  }
+
+  @Test public void shrinkingViewTypeCountIsIgnored() {
+    recycleBin.setViewTypeCount(1);
+    recycleBin.addScrapView(new View(context), 0, 1);
+    assertThat(recycleBin.getScrapCount(1)).isEqualTo(1);
+  }
+
+  @Test public void statisticsAreCounted() {
+    recycleBin.setScrapCapacity(0, 2);
+    assertThat(recycleBin.getScrapView(0, 0)).isNull();
+    recycleBin.addScrapView(new View(context), 0, 0);
+    recycleBin.addScrapView(new View(context), 1, 0);
+    recycleBin.addScrapView(new View(context), 2, 0);
+    recycleBin.getScrapView(2, 0);
+    recycleBin.getScrapView(5, 0);
+
+    assertThat(recycleBin.getMissCount(0)).isEqualTo(1);
+    assertThat(recycleBin.getScrapHitCount(0)).isEqualTo(2);
+    assertThat(recycleBin.getExactPositionHitCount(0)).isEqualTo(1);
+    assertThat(recycleBin.getEvictionCount(0)).isEqualTo(1);
+    assertThat(recycleBin.getPeakScrapCount(0)).isEqualTo(2);
+    assertThat(recycleBin.getScrapHitCount(1)).isEqualTo(0);
+
+    recycleBin.resetStats();
+    assertThat(recycleBin.getScrapHitCount(0)).isEqualTo(0);
+    assertThat(recycleBin.getPeakScrapCount(0)).isEqualTo(0);
+  }
+
+  @Test public void listenerIsNotifiedOfEvents() {
+    RecycleBin.Listener listener = mock(RecycleBin.Listener.class);
+    recycleBin.setListener(listener);
+    recycleBin.setScrapCapacity(1, 1);
+
+    recycleBin.getScrapView(3, 1);
+    verify(listener).onScrapMiss(1, 3);
+    recycleBin.addScrapView(new View(context), 3, 1);
+    recycleBin.addScrapView(new View(context), 4, 1);
+    verify(listener).onScrapEvicted(1, 1);
+    recycleBin.getScrapView(4, 1);
+    verify(listener).onScrapHit(1, 4, true);
+    verifyNoMoreInteractions(listener);
+  }
+
+  @Test public void recentMissesAreTrackedBetweenScraps() {
+    recycleBin.getScrapView(0, 1);
+    recycleBin.getScrapView(1, 1);
+    recycleBin.addScrapView(new View(context), 0, 1);
+    recycleBin.getScrapView(2, 1);
+    assertThat(recycleBin.getRecentMissCount(1)).isEqualTo(2);
+    assertThat(recycleBin.getRecentMissCount(0)).isEqualTo(0);
+  }
+
+  @Test public void recentMissesDecayWhileScrapKeepsUp() {
+    recycleBin.getScrapView(0, 1);
+    recycleBin.getScrapView(1, 1);
+    recycleBin.addScrapView(new View(context), 0, 1);
+    recycleBin.addScrapView(new View(context), 1, 1);
+    assertThat(recycleBin.getRecentMissCount(1)).isEqualTo(2);
+
+    recycleBin.addScrapView(recycleBin.getScrapView(2, 1), 2, 1);
+    assertThat(recycleBin.getRecentMissCount(1)).isEqualTo(1);
+    recycleBin.addScrapView(recycleBin.getScrapView(3, 1), 3, 1);
+    assertThat(recycleBin.getRecentMissCount(1)).isEqualTo(0);
+    recycleBin.addScrapView(recycleBin.getScrapView(4, 1), 4, 1);
+    assertThat(recycleBin.getRecentMissCount(1)).isEqualTo(0);
+  }
+
+  @Test public void viewsServedFromScrapAreNotPrewarmed() {
+    recycleBin.addScrapView(new View(context), 0, 1);
+    recycleBin.getScrapView(0, 1);
+    recycleBin.startPrewarming(new RecycleBin.ViewFactory() {
+      @Override public View newView(int viewType) {
+        return new View(context);
+      }
+    });
+
+    assertThat(recycleBin.getPrewarmTarget(1)).isEqualTo(0);
+    assertThat(recycleBin.prewarm()).isFalse();
+    recycleBin.stopPrewarming();
+  }
+
+  @Test public void prewarmFillsScrapUpToRecentMisses() {
+    recycleBin.getScrapView(0, 1);
+    recycleBin.getScrapView(1, 1);
+    recycleBin.startPrewarming(new RecycleBin.ViewFactory() {
+      @Override public View newView(int viewType) {
+        return new View(context);
+      }
+    });
+
+    assertThat(recycleBin.getPrewarmTarget(1)).isEqualTo(2);
+    assertThat(recycleBin.prewarm()).isTrue();
+    assertThat(recycleBin.prewarm()).isTrue();
+    assertThat(recycleBin.prewarm()).isFalse();
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(0);
+    assertThat(recycleBin.getScrapCount(1)).isEqualTo(2);
+
+    recycleBin.stopPrewarming();
+    assertThat(recycleBin.getScrapView(2, 1)).isNotNull();
+    assertThat(recycleBin.prewarm()).isFalse();
+  }
+
+  @Test public void adaptiveCapacityGrowsToWorkingSet() {
+    recycleBin.setScrapCapacity(0, 1);
+    recycleBin.setAdaptiveCapacity(true);
+    churn(0, 5, RecycleBin.ADAPTIVE_WINDOW);
+    assertThat(recycleBin.getScrapCapacity(0)).isEqualTo(5);
+  }
+
+  @Test public void adaptiveCapacityShrinksOnlyAfterSeveralWindows() {
+    recycleBin.setScrapCapacity(0, 6);
+    recycleBin.setAdaptiveCapacity(true);
+    churn(0, 2, RecycleBin.ADAPTIVE_WINDOW * (RecycleBin.ADAPTIVE_SHRINK_WINDOWS - 1));
+    assertThat(recycleBin.getScrapCapacity(0)).isEqualTo(6);
+    churn(0, 2, RecycleBin.ADAPTIVE_WINDOW);
+    assertThat(recycleBin.getScrapCapacity(0)).isEqualTo(2);
+  }
+
+  @Test public void ensureScrapCapacityOnlyRaisesGivenViewType() {
+    recycleBin.setScrapCapacity(1, 8);
+    recycleBin.ensureScrapCapacity(0, 6);
+    recycleBin.ensureScrapCapacity(1, 6);
+    recycleBin.setViewTypeCount(3);
+
+    assertThat(recycleBin.getScrapCapacity(0)).isEqualTo(6);
+    assertThat(recycleBin.getScrapCapacity(1)).isEqualTo(8);
+    assertThat(recycleBin.getScrapCapacity(2)).isEqualTo(RecycleBin.DEFAULT_SCRAP_CAPACITY);
+  }
+
+  @Test public void adaptiveCapacityShrinksBelowEnsuredFloor() {
+    recycleBin.ensureScrapCapacity(0, 6);
+    recycleBin.setAdaptiveCapacity(true);
+    churn(0, 2, RecycleBin.ADAPTIVE_WINDOW * RecycleBin.ADAPTIVE_SHRINK_WINDOWS);
+    assertThat(recycleBin.getScrapCapacity(0)).isEqualTo(2);
+  }
+
+  @Test public void trimMemoryDiscardsOldestViewsInProportion() {
+    recycleBin.setScrapCapacity(0, 4);
+    View newest = new View(context);
+    for (int i = 0; i < 3; i++) {
+      recycleBin.addScrapView(new View(context), i, 0);
+    }
+    recycleBin.addScrapView(newest, 3, 0);
+
+    recycleBin.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(2);
+    assertThat(recycleBin.getScrapCapacity(0)).isEqualTo(4);
+    assertThat(recycleBin.getEvictionCount(0)).isEqualTo(2);
+    assertThat(recycleBin.getScrapView(3, 0)).isSameAs(newest);
+
+    recycleBin.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(0);
+  }
+
+  /** Request {@code requests} views of {@code viewType}, keeping {@code alive} of them in use. */
+  private void churn(int viewType, int alive, int requests) {
+    View[] views = new View[alive];
+    for (int i = 0; i < requests; i++) {
+      int slot = i % alive;
+      if (views[slot] != null) {
+        recycleBin.addScrapView(views[slot], i - alive, viewType);
+      }
+      views[slot] = recycleBin.getScrapView(i, viewType);
+      if (views[slot] == null) {
+        views[slot] = new View(context);
+      }
+    }
+    for (View view : views) {
+      recycleBin.addScrapView(view, requests, viewType);
+    }
+  }
+}
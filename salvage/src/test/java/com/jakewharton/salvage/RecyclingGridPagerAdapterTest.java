@@ -0,0 +1,286 @@
+package com.jakewharton.salvage;
+
+import android.app.Activity;
+import android.content.Context;
+import android.support.v4.view.PagerAdapter;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(SalvageTestRunner.class)
+public class RecyclingGridPagerAdapterTest {
+  final Context context = new Activity();
+  TestGrid.InflatingContext gridContext;
+  LinearLayout container;
+  RecycleBin recycleBin;
+
+  @Before public void setUp() {
+    gridContext = new TestGrid.InflatingContext(context, 2, 2);
+    container = new LinearLayout(context);
+    recycleBin = new RecycleBin();
+  }
+
+  @Test public void cachedPageIsReattachedWithoutGetView() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 16, recycleBin);
+    Object page = adapter.instantiateItem(container, 1);
+    assertThat(adapter.bindCount).isEqualTo(4);
+    adapter.destroyItem(container, 1, page);
+
+    adapter.bindCount = 0;
+    assertThat(adapter.instantiateItem(container, 1)).isSameAs(page);
+    assertThat(adapter.bindCount).isEqualTo(0);
+  }
+
+  @Test public void returnSwipeWithinCacheSizeSkipsGetView() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 40, recycleBin);
+    // Swipe from page 0 to 3 with one offscreen page on each side, as ViewPager does.
+    Object[] pages = new Object[5];
+    pages[0] = adapter.instantiateItem(container, 0);
+    pages[1] = adapter.instantiateItem(container, 1);
+    pages[2] = adapter.instantiateItem(container, 2);
+    adapter.destroyItem(container, 0, pages[0]);
+    pages[3] = adapter.instantiateItem(container, 3);
+    adapter.destroyItem(container, 1, pages[1]);
+    pages[4] = adapter.instantiateItem(container, 4);
+    adapter.bindCount = 0;
+
+    // And back to page 1.
+    assertThat(adapter.instantiateItem(container, 1)).isSameAs(pages[1]);
+    adapter.destroyItem(container, 4, pages[4]);
+    assertThat(adapter.instantiateItem(container, 0)).isSameAs(pages[0]);
+    adapter.destroyItem(container, 3, pages[3]);
+    assertThat(adapter.bindCount).isEqualTo(0);
+  }
+
+  @Test public void partialLastPageFallsBackToCellScrap() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 6, recycleBin);
+    adapter.setPageCacheSize(1);
+    Object page = adapter.instantiateItem(container, 0);
+    adapter.destroyItem(container, 0, page);
+
+    Object lastPage = adapter.instantiateItem(container, 1);
+    assertThat(lastPage).isSameAs(page);
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(2);
+    adapter.destroyItem(container, 1, lastPage);
+
+    adapter.instantiateItem(container, 0);
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(0);
+    assertThat(adapter.createCount).isEqualTo(4);
+  }
+
+  @Test public void viewTypeMismatchScrapsCell() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 8, recycleBin);
+    adapter.instantiateItem(container, 0);
+    ViewGroup grid = (ViewGroup) container.getChildAt(0);
+    View cell = grid.getChildAt(1);
+
+    adapter.viewTypes = new int[] { 0, 1, 0, 0 };
+    adapter.notifyItemChanged(1);
+    assertThat(grid.getChildAt(1)).isNotSameAs(cell);
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(1);
+    assertThat(recycleBin.getScrapView(1, 0)).isSameAs(cell);
+  }
+
+  @Test public void cellReplacedByGetViewIsRecycled() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 8, recycleBin);
+    adapter.instantiateItem(container, 0);
+    ViewGroup grid = (ViewGroup) container.getChildAt(0);
+    View cell = grid.getChildAt(1);
+
+    adapter.replaceViews = true;
+    adapter.notifyItemChanged(1);
+    assertThat(grid.getChildAt(1)).isNotSameAs(cell);
+    assertThat(adapter.recycleCount).isEqualTo(1);
+    assertThat(recycleBin.getScrapView(1, 0)).isSameAs(cell);
+  }
+
+  @Test public void getItemPositionRebindsInPlaceAfterDataChange() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 8, recycleBin);
+    Object first = adapter.instantiateItem(container, 0);
+    Object second = adapter.instantiateItem(container, 1);
+    adapter.bindCount = 0;
+
+    adapter.itemCount = 4;
+    adapter.notifyDataSetChanged();
+    assertThat(adapter.getItemPosition(first)).isEqualTo(PagerAdapter.POSITION_UNCHANGED);
+    assertThat(adapter.bindCount).isEqualTo(4);
+    assertThat(adapter.getItemPosition(second)).isEqualTo(PagerAdapter.POSITION_NONE);
+    assertThat(adapter.bindCount).isEqualTo(4);
+    assertThat(adapter.createCount).isEqualTo(8);
+  }
+
+  @Test public void notifyItemChangedBindsActivePageAndMarksCachedPage() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 8, recycleBin);
+    adapter.instantiateItem(container, 0);
+    Object cached = adapter.instantiateItem(container, 1);
+    adapter.destroyItem(container, 1, cached);
+    adapter.bindCount = 0;
+
+    Object payload = new Object();
+    adapter.notifyItemChanged(1, payload);
+    assertThat(adapter.payloadCount).isEqualTo(1);
+    assertThat(adapter.lastPayload).isSameAs(payload);
+
+    adapter.notifyItemChanged(5, payload);
+    assertThat(adapter.payloadCount).isEqualTo(1);
+    assertThat(adapter.bindCount).isEqualTo(0);
+
+    assertThat(adapter.instantiateItem(container, 1)).isSameAs(cached);
+    assertThat(adapter.bindCount).isEqualTo(1);
+    assertThat(adapter.lastPosition).isEqualTo(5);
+  }
+
+  @Test public void suppliedPageSizeAvoidsInflation() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 0, 4, recycleBin);
+    assertThat(adapter.getCount()).isEqualTo(0);
+    adapter.itemCount = 9;
+    assertThat(adapter.getCount()).isEqualTo(3);
+    assertThat(gridContext.inflateCount).isEqualTo(0);
+  }
+
+  @Test public void pageInflatedToMeasurePageSizeIsReused() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 9, recycleBin);
+    assertThat(gridContext.inflateCount).isEqualTo(0);
+    assertThat(adapter.getCount()).isEqualTo(3);
+    assertThat(gridContext.inflateCount).isEqualTo(1);
+
+    adapter.instantiateItem(container, 0);
+    assertThat(gridContext.inflateCount).isEqualTo(1);
+  }
+
+  @Test public void trimMemoryDropsCachedPagesInProportion() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 16, recycleBin);
+    adapter.setPageCacheSize(4);
+    Object[] pages = new Object[4];
+    for (int i = 0; i < pages.length; i++) {
+      pages[i] = adapter.instantiateItem(container, i);
+    }
+    for (int i = 0; i < pages.length; i++) {
+      adapter.destroyItem(container, i, pages[i]);
+    }
+    adapter.bindCount = 0;
+
+    adapter.trimMemory(TRIM_MEMORY_RUNNING_LOW);
+    assertThat(adapter.instantiateItem(container, 3)).isSameAs(pages[3]);
+    assertThat(adapter.instantiateItem(container, 2)).isSameAs(pages[2]);
+    assertThat(adapter.bindCount).isEqualTo(0);
+    adapter.instantiateItem(container, 1);
+    assertThat(adapter.bindCount).isEqualTo(4);
+
+    adapter.trimMemory(TRIM_MEMORY_BACKGROUND);
+    assertThat(recycleBin.getScrapCount(0)).isEqualTo(0);
+  }
+
+  @Test public void cellsOfDroppedPagesAreRecycled() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 16, recycleBin);
+    adapter.setPageCacheSize(1);
+    Object first = adapter.instantiateItem(container, 0);
+    Object second = adapter.instantiateItem(container, 1);
+    adapter.destroyItem(container, 0, first);
+    // The first page falls out of the cache but keeps its cells as a spare.
+    adapter.destroyItem(container, 1, second);
+    assertThat(adapter.recycleCount).isEqualTo(0);
+
+    adapter.trimMemory(TRIM_MEMORY_BACKGROUND);
+    assertThat(adapter.recycleCount).isEqualTo(8);
+  }
+
+  @Test public void pageFallingOutOfCacheIsReusedBeforeInflating() {
+    CountingAdapter adapter = new CountingAdapter(gridContext, 400, recycleBin);
+    // Swipe four pages forward and back, over and over, as ViewPager does with one offscreen
+    // page on each side: destroy before create going forward, create before destroy going back.
+    int current = 4;
+    Object[] pages = new Object[3];
+    for (int i = 0; i < pages.length; i++) {
+      pages[i] = adapter.instantiateItem(container, current - 1 + i);
+    }
+    int inflated = 0;
+    for (int swipe = 0; swipe < 200; swipe++) {
+      if (swipe == 40) {
+        inflated = gridContext.inflateCount;
+      }
+      if ((swipe / 4) % 2 == 0) {
+        adapter.destroyItem(container, current - 1, pages[0]);
+        current++;
+        pages[0] = pages[1];
+        pages[1] = pages[2];
+        pages[2] = adapter.instantiateItem(container, current + 1);
+      } else {
+        current--;
+        Object left = adapter.instantiateItem(container, current - 1);
+        adapter.destroyItem(container, current + 2, pages[2]);
+        pages[2] = pages[1];
+        pages[1] = pages[0];
+        pages[0] = left;
+      }
+    }
+    assertThat(gridContext.inflateCount).isEqualTo(inflated);
+  }
+
+  /** A grid adapter with two view types which counts the cells it binds, creates and recycles. */
+  static class CountingAdapter extends RecyclingGridPagerAdapter {
+    private final Context context;
+    int itemCount;
+    int[] viewTypes = new int[0];
+    int bindCount;
+    int createCount;
+    int lastPosition = -1;
+    int payloadCount;
+    Object lastPayload;
+    int recycleCount;
+    /** Whether getView creates a new cell even when it is handed one to convert. */
+    boolean replaceViews;
+
+    CountingAdapter(Context context, int itemCount, RecycleBin recycleBin) {
+      super(context, 0, 0, recycleBin);
+      this.context = context;
+      this.itemCount = itemCount;
+    }
+
+    CountingAdapter(Context context, int itemCount, int pageSize, RecycleBin recycleBin) {
+      super(context, 0, 0, pageSize, recycleBin);
+      this.context = context;
+      this.itemCount = itemCount;
+    }
+
+    @Override protected int getItemCount() {
+      return itemCount;
+    }
+
+    @Override public int getViewTypeCount() {
+      return 2;
+    }
+
+    @Override public int getItemViewType(int position) {
+      return position < viewTypes.length ? viewTypes[position] : 0;
+    }
+
+    @Override public View getView(int position, View convertView, ViewGroup container) {
+      bindCount++;
+      lastPosition = position;
+      if (convertView == null || replaceViews) {
+        createCount++;
+        convertView = new View(context);
+      }
+      return convertView;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup container, Object payload) {
+      payloadCount++;
+      lastPayload = payload;
+      return convertView;
+    }
+
+    @Override protected void onViewRecycled(View cell) {
+      recycleCount++;
+    }
+  }
+}
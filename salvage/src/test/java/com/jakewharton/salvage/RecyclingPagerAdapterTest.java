@@ -2,6 +2,7 @@ package com.jakewharton.salvage;
 
 import android.app.Activity;
 import android.content.Context;
+import android.support.v4.view.PagerAdapter;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.LinearLayout;
@@ -10,6 +11,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -69,4 +71,121 @@ public class RecyclingPagerAdapterTest {
     adapter.destroyItem(container, 0, child);
     verifyNoMoreInteractions(recycleBin);
   }
+
+  @Test public void pageWithoutStableIdsKeepsPosition() {
+    RecyclingPagerAdapter adapter = new RecyclingPagerAdapter(recycleBin) {
+      @Override public View getView(int position, View convertView, ViewGroup container) {
+        return new TextView(context);
+      }
+
+      @Override public int getCount() {
+        return 3;
+      }
+    };
+    Object page = adapter.instantiateItem(new LinearLayout(context), 1);
+
+    assertThat(adapter.getItemPosition(page)).isEqualTo(PagerAdapter.POSITION_UNCHANGED);
+  }
+
+  @Test public void unchangedStableIdKeepsPage() {
+    long[] ids = { 10, 20, 30 };
+    RecyclingPagerAdapter adapter = stableIdAdapter(ids);
+    Object page = adapter.instantiateItem(new LinearLayout(context), 1);
+
+    ids[0] = 40;
+    assertThat(adapter.getItemPosition(page)).isEqualTo(PagerAdapter.POSITION_UNCHANGED);
+  }
+
+  @Test public void movedStableIdReportsNewPosition() {
+    long[] ids = { 10, 20, 30 };
+    RecyclingPagerAdapter adapter = stableIdAdapter(ids);
+    Object page = adapter.instantiateItem(new LinearLayout(context), 1);
+
+    ids[0] = 20;
+    ids[1] = 10;
+    assertThat(adapter.getItemPosition(page)).isEqualTo(0);
+  }
+
+  @Test public void removedStableIdRecreatesPage() {
+    long[] ids = { 10, 20, 30 };
+    RecyclingPagerAdapter adapter = stableIdAdapter(ids);
+    Object page = adapter.instantiateItem(new LinearLayout(context), 1);
+
+    ids[1] = 50;
+    assertThat(adapter.getItemPosition(page)).isEqualTo(PagerAdapter.POSITION_NONE);
+  }
+
+  @Test public void itemChangedPassesPayloadToAttachedPage() {
+    LinearLayout container = new LinearLayout(context);
+    final Object[] payloads = new Object[1];
+    RecyclingPagerAdapter adapter = new RecyclingPagerAdapter(recycleBin) {
+      @Override public View getView(int position, View convertView, ViewGroup container) {
+        if (convertView == null) {
+          return new TextView(context);
+        }
+        return convertView;
+      }
+
+      @Override public View getView(int position, View convertView, ViewGroup container,
+          Object payload) {
+        payloads[0] = payload;
+        return convertView;
+      }
+
+      @Override public int getCount() {
+        return 2;
+      }
+    };
+    adapter.instantiateItem(container, 0);
+
+    Object payload = new Object();
+    adapter.notifyItemChanged(1, payload);
+    assertThat(payloads[0]).isNull();
+    adapter.notifyItemChanged(0, payload);
+    assertThat(payloads[0]).isSameAs(payload);
+  }
+
+  @Test public void viewReturnedInsteadOfAttachedPageIsRecycled() {
+    LinearLayout container = new LinearLayout(context);
+    final View replacement = new TextView(context);
+    RecyclingPagerAdapter adapter = new RecyclingPagerAdapter(recycleBin) {
+      @Override public View getView(int position, View convertView, ViewGroup container) {
+        if (convertView == null) {
+          return new TextView(context);
+        }
+        return replacement;
+      }
+
+      @Override public int getCount() {
+        return 1;
+      }
+    };
+    adapter.instantiateItem(container, 0);
+
+    Object page = container.getChildAt(0);
+
+    adapter.notifyItemChanged(0);
+    verify(recycleBin).addScrapView(replacement, 0, 0);
+    assertThat(adapter.getItemPosition(page)).isEqualTo(PagerAdapter.POSITION_NONE);
+  }
+
+  private RecyclingPagerAdapter stableIdAdapter(final long[] ids) {
+    return new RecyclingPagerAdapter(recycleBin) {
+      @Override public boolean hasStableIds() {
+        return true;
+      }
+
+      @Override public long getItemId(int position) {
+        return ids[position];
+      }
+
+      @Override public View getView(int position, View convertView, ViewGroup container) {
+        return new TextView(context);
+      }
+
+      @Override public int getCount() {
+        return ids.length;
+      }
+    };
+  }
 }
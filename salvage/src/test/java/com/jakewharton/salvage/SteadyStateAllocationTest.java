@@ -0,0 +1,204 @@
+package com.jakewharton.salvage;
+
+import android.app.Activity;
+import android.content.Context;
+import android.support.v4.view.PagerAdapter;
+import android.view.View;
+import android.view.ViewGroup;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Regression gate for the library's allocation-free steady state, run with every build. Once the
+ * scrap heaps and page cache are warm, thousands of swipes must not allocate a single object per
+ * swipe.
+ * <p>
+ * Only the adapter and bin calls are measured. Pages and cells are attached to {@link TestGrid}s,
+ * which keep their children in an array, and cells skip the framework's accessibility bookkeeping,
+ * so nothing Robolectric allocates for layout or shadow dispatch is counted.
+ */
+@RunWith(SalvageTestRunner.class)
+public class SteadyStateAllocationTest {
+  private static final int[] VIEW_TYPE_COUNTS = { 1, 4 };
+  private static final int[][] GRIDS = { { 2, 2 }, { 3, 3 } };
+  private static final int WARMUP_SWIPES = 1000;
+  private static final int SWIPES = 5000;
+  /** Number of swipes made in one direction before turning around. */
+  private static final int RUN_LENGTH = 4;
+
+  final Context context = new Activity();
+
+  @Before public void setUp() {
+    // Reported as skipped on VMs which do not count allocations per thread.
+    Assume.assumeTrue(allocatedBytes() != 0);
+  }
+
+  @Test public void recycleBin() {
+    for (int viewTypeCount : VIEW_TYPE_COUNTS) {
+      final RecycleBin recycleBin = new RecycleBin();
+      recycleBin.setViewTypeCount(viewTypeCount);
+      recycleBin.setScrapCapacity(4);
+      final View[] views = new View[viewTypeCount * 4];
+      for (int i = 0; i < views.length; i++) {
+        views[i] = new Cell(context);
+      }
+      final int types = viewTypeCount;
+      assertSteadyState("RecycleBin, " + viewTypeCount + " types", new Swipe() {
+        @Override public void run(int swipe) {
+          for (int i = 0; i < views.length; i++) {
+            recycleBin.addScrapView(views[i], swipe + i, i % types);
+          }
+          for (int i = 0; i < views.length; i++) {
+            views[i] = recycleBin.getScrapView(swipe + i + 1, i % types);
+          }
+        }
+      });
+    }
+  }
+
+  @Test public void recyclingPagerAdapter() {
+    for (final int viewTypeCount : VIEW_TYPE_COUNTS) {
+      RecyclingPagerAdapter adapter = new RecyclingPagerAdapter() {
+        @Override public int getViewTypeCount() {
+          return viewTypeCount;
+        }
+
+        @Override public int getItemViewType(int position) {
+          return position % viewTypeCount;
+        }
+
+        @Override public View getView(int position, View convertView, ViewGroup container) {
+          if (convertView == null) {
+            convertView = new Cell(context);
+          }
+          return convertView;
+        }
+
+        @Override public int getCount() {
+          return Integer.MAX_VALUE;
+        }
+      };
+      assertSteadyState("RecyclingPagerAdapter, " + viewTypeCount + " types",
+          new Pager(adapter, new TestGrid(context, 1, 1)));
+    }
+  }
+
+  @Test public void recyclingGridPagerAdapter() {
+    for (final int viewTypeCount : VIEW_TYPE_COUNTS) {
+      for (int[] grid : GRIDS) {
+        Context gridContext = new TestGrid.InflatingContext(context, grid[0], grid[1]);
+        RecyclingGridPagerAdapter adapter = new RecyclingGridPagerAdapter(gridContext, 0, 0) {
+          @Override public int getViewTypeCount() {
+            return viewTypeCount;
+          }
+
+          @Override public int getItemViewType(int position) {
+            return position % viewTypeCount;
+          }
+
+          @Override public View getView(int position, View convertView, ViewGroup container) {
+            if (convertView == null) {
+              convertView = new Cell(context);
+            }
+            return convertView;
+          }
+
+          @Override protected int getItemCount() {
+            return Integer.MAX_VALUE / 2;
+          }
+        };
+        assertSteadyState(
+            "RecyclingGridPagerAdapter " + grid[0] + "x" + grid[1] + ", " + viewTypeCount + " types",
+            new Pager(adapter, new TestGrid(context, 1, 1)));
+      }
+    }
+  }
+
+  private static void assertSteadyState(String name, Swipe swipe) {
+    for (int i = 0; i < WARMUP_SWIPES; i++) {
+      swipe.run(i);
+    }
+    long start = allocatedBytes();
+    for (int i = 0; i < SWIPES; i++) {
+      swipe.run(WARMUP_SWIPES + i);
+    }
+    long allocated = allocatedBytes() - start;
+    // Anything allocated on every swipe would be at least SWIPES bytes in total.
+    assertTrue(name + " allocated " + allocated + " bytes over " + SWIPES + " swipes",
+        allocated < SWIPES);
+  }
+
+  /**
+   * @return The number of bytes allocated so far by the current thread or {@code 0} if the VM
+   *         does not track allocations per thread.
+   */
+  private static long allocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+      if (sunBean.isThreadAllocatedMemorySupported()) {
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return 0;
+  }
+
+  interface Swipe {
+    void run(int swipe);
+  }
+
+  /**
+   * Swipes a few pages forward and back again, over and over, with one offscreen page on each
+   * side. Pages are created and destroyed in the order ViewPager uses: destroy before create when
+   * going forward, create before destroy when going back.
+   */
+  private static final class Pager implements Swipe {
+    private final PagerAdapter adapter;
+    private final ViewGroup container;
+    /** The pages left of, at and right of the current one. */
+    private final Object[] pages = new Object[3];
+    private int current = RUN_LENGTH;
+
+    Pager(PagerAdapter adapter, ViewGroup container) {
+      this.adapter = adapter;
+      this.container = container;
+      for (int i = 0; i < pages.length; i++) {
+        pages[i] = adapter.instantiateItem(container, current - 1 + i);
+      }
+    }
+
+    @Override public void run(int swipe) {
+      if ((swipe / RUN_LENGTH) % 2 == 0) {
+        adapter.destroyItem(container, current - 1, pages[0]);
+        current++;
+        pages[0] = pages[1];
+        pages[1] = pages[2];
+        pages[2] = adapter.instantiateItem(container, current + 1);
+      } else {
+        current--;
+        Object left = adapter.instantiateItem(container, current - 1);
+        adapter.destroyItem(container, current + 2, pages[2]);
+        pages[2] = pages[1];
+        pages[1] = pages[0];
+        pages[0] = left;
+      }
+    }
+  }
+
+  /** A cell which leaves out the framework's accessibility bookkeeping when it is scrapped. */
+  private static final class Cell extends View {
+    Cell(Context context) {
+      super(context);
+    }
+
+    @Override public void setAccessibilityDelegate(AccessibilityDelegate delegate) {
+    }
+  }
+}
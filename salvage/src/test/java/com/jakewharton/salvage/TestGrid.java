@@ -0,0 +1,137 @@
+package com.jakewharton.salvage;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import java.util.Arrays;
+
+/**
+ * A fixed-size grid page built in code so tests can drive {@link RecyclingGridPagerAdapter}
+ * without a compiled layout resource.
+ * <p>
+ * Children are kept in a plain array rather than added through the framework, so attaching and
+ * detaching cells or pages does not go through layout and allocates nothing once the array is
+ * large enough. This keeps allocation measurements down to what the library itself does.
+ */
+final class TestGrid extends ViewGroup implements IGrid {
+  private final int rows;
+  private final int columns;
+  private View[] children = new View[0];
+  private int childCount;
+
+  TestGrid(Context context, int rows, int columns) {
+    super(context);
+    this.rows = rows;
+    this.columns = columns;
+  }
+
+  @Override public int getRowCount() {
+    return rows;
+  }
+
+  @Override public int getColumnCount() {
+    return columns;
+  }
+
+  @Override public int getChildCount() {
+    return childCount;
+  }
+
+  @Override public View getChildAt(int index) {
+    if (index < 0 || index >= childCount) {
+      return null;
+    }
+    return children[index];
+  }
+
+  @Override public void addView(View child) {
+    addView(child, -1);
+  }
+
+  @Override public void addView(View child, int index) {
+    if (childCount == children.length) {
+      children = Arrays.copyOf(children, Math.max(4, childCount * 2));
+    }
+    if (index < 0) {
+      index = childCount;
+    }
+    System.arraycopy(children, index, children, index + 1, childCount - index);
+    children[index] = child;
+    childCount++;
+  }
+
+  @Override public void removeView(View child) {
+    for (int i = 0; i < childCount; i++) {
+      if (children[i] == child) {
+        removeViews(i, 1);
+        return;
+      }
+    }
+  }
+
+  @Override public void removeViewAt(int index) {
+    removeViews(index, 1);
+  }
+
+  @Override public void removeViews(int start, int count) {
+    System.arraycopy(children, start + count, children, start, childCount - start - count);
+    Arrays.fill(children, childCount - count, childCount, null);
+    childCount -= count;
+  }
+
+  @Override public void removeAllViews() {
+    removeViews(0, childCount);
+  }
+
+  @Override protected void onLayout(boolean changed, int l, int t, int r, int b) {
+  }
+
+  /**
+   * A context whose every inflated layout, as the grid adapter inflates its pages, is an empty
+   * {@code rows} by {@code columns} grid. Counts the pages inflated through it.
+   */
+  static final class InflatingContext extends ContextWrapper {
+    private final int rows;
+    private final int columns;
+    private LayoutInflater inflater;
+    int inflateCount;
+
+    InflatingContext(Context context, int rows, int columns) {
+      super(context);
+      this.rows = rows;
+      this.columns = columns;
+    }
+
+    @Override public Object getSystemService(String name) {
+      if (!LAYOUT_INFLATER_SERVICE.equals(name)) {
+        return super.getSystemService(name);
+      }
+      if (inflater == null) {
+        inflater = new GridInflater(this);
+      }
+      return inflater;
+    }
+
+    private final class GridInflater extends LayoutInflater {
+      GridInflater(Context context) {
+        super(context);
+      }
+
+      @Override public LayoutInflater cloneInContext(Context newContext) {
+        return new GridInflater(newContext);
+      }
+
+      @Override public View inflate(int resource, ViewGroup root, boolean attachToRoot) {
+        inflateCount++;
+        View grid = new TestGrid(getContext(), rows, columns);
+        if (root != null && attachToRoot) {
+          root.addView(grid);
+          return root;
+        }
+        return grid;
+      }
+    }
+  }
+}